@@ -0,0 +1,73 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.Redemption;
+import com.example.demo.service.CreditCardService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Card and redemption lookup latency by portfolio size. With the id index the numbers should stay flat.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class CardLookupBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int cards;
+
+    private CreditCardService service;
+    private String[] cardIds;
+    private String[] redemptionIds;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<CreditCard> data = Datasets.cards(cards, 1);
+        cardIds = new String[cards];
+        redemptionIds = new String[cards];
+        for (int i = 0; i < cards; i++) {
+            cardIds[i] = data.get(i).getId();
+            redemptionIds[i] = data.get(i).getRedemptions().get(0).getId();
+        }
+        service = new CreditCardService(Datasets.inMemory(data));
+    }
+
+    @Benchmark
+    public Optional<CreditCard> getCreditCardById() {
+        int i = next();
+        return service.getCreditCardById(cardIds[i]);
+    }
+
+    @Benchmark
+    public Optional<Redemption> updateRedemptionStatus() {
+        int i = next();
+        return service.updateRedemptionStatus(cardIds[i], redemptionIds[i], (i & 1) == 0);
+    }
+
+    private int next() {
+        int i = cursor++;
+        if (cursor == cards) {
+            cursor = 0;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.Redemption;
+import com.example.demo.service.CreditCardService;
+import com.example.demo.service.OutstandingCredits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service's hot paths at 10^2, 10^4 and 10^6 redemptions, with persistence stubbed out
+ * (see {@link PersistenceBenchmark} for the disk side).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class CreditCardServiceBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int redemptions;
+
+    private CreditCardService service;
+    private String[] cardIds;
+    private String[] redemptionIds;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<CreditCard> data = Datasets.portfolio(redemptions, false);
+        cardIds = new String[redemptions];
+        redemptionIds = new String[redemptions];
+        int i = 0;
+        for (CreditCard card : data) {
+            for (Redemption redemption : card.getRedemptions()) {
+                cardIds[i] = card.getId();
+                redemptionIds[i++] = redemption.getId();
+            }
+        }
+        service = new CreditCardService(Datasets.inMemory(data));
+    }
+
+    @Benchmark
+    public List<CreditCard> getAllCreditCards() {
+        return service.getAllCreditCards();
+    }
+
+    @Benchmark
+    public Optional<Redemption> updateRedemptionStatus() {
+        int i = cursor++;
+        if (cursor == redemptions) {
+            cursor = 0;
+        }
+        return service.updateRedemptionStatus(cardIds[i], redemptionIds[i], (i & 1) == 0);
+    }
+
+    @Benchmark
+    public double getCurrentYearReimbursementTotal() {
+        return service.getCurrentYearReimbursementTotal();
+    }
+
+    @Benchmark
+    public OutstandingCredits.Expiring getExpiringCredits() {
+        return service.getExpiringCredits(10, 31);
+    }
+
+    /**
+     * The scheduled reset on a day when nothing is due, the common case.
+     */
+    @Benchmark
+    public void resetRedemptions() {
+        service.resetRedemptions();
+    }
+
+    /**
+     * Loading a portfolio that was last used a year ago: indexing plus a catch-up reset that rolls the year over
+     * and unchecks every checked redemption.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    @Warmup(iterations = 2)
+    public CreditCardService loadWithCatchUpReset(StalePortfolio stale) {
+        return new CreditCardService(Datasets.inMemory(stale.cards));
+    }
+
+    @State(Scope.Benchmark)
+    public static class StalePortfolio {
+        @Param({"100", "10000", "1000000"})
+        public int redemptions;
+
+        List<CreditCard> cards;
+
+        // The reset mutates the cards, so every iteration needs fresh ones
+        @Setup(Level.Iteration)
+        public void setUp() {
+            cards = Datasets.portfolio(redemptions, true);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import com.example.demo.repository.CreditCardRepository;
+import com.example.demo.util.ChangeRecord;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Synthetic portfolios for the benchmarks.
+ */
+public final class Datasets {
+
+    private static final Redemption.Frequency[] FREQUENCIES = Redemption.Frequency.values();
+    public static final int REDEMPTIONS_PER_CARD = 10;
+
+    private Datasets() {
+    }
+
+    public static List<CreditCard> cards(int cardCount, int redemptionsPerCard) {
+        List<CreditCard> cards = new ArrayList<>(cardCount);
+        for (int c = 0; c < cardCount; c++) {
+            List<Redemption> redemptions = new ArrayList<>(redemptionsPerCard);
+            for (int r = 0; r < redemptionsPerCard; r++) {
+                Redemption.Frequency frequency = FREQUENCIES[(c + r) % FREQUENCIES.length];
+                redemptions.add(new Redemption(UUID.randomUUID().toString(), "Credit " + r, 5.0 + r, frequency,
+                        false, null, new PeriodSet()));
+            }
+            cards.add(new CreditCard(UUID.randomUUID().toString(), "Card " + c, "Synthetic card " + c,
+                    redemptions, new HashMap<>(), 0.0));
+        }
+        return cards;
+    }
+
+    /**
+     * A realistic portfolio of {@code totalRedemptions} redemptions, {@value #REDEMPTIONS_PER_CARD} per card, with
+     * mixed frequencies. Every other redemption is checked off in its current period and every card has a past
+     * yearly summary. With {@code stale} set, the check-offs are dated last year instead, so loading the portfolio
+     * triggers a full catch-up rollover.
+     */
+    public static List<CreditCard> portfolio(int totalRedemptions, boolean stale) {
+        LocalDate checkedOn = stale ? LocalDate.now().minusYears(1) : LocalDate.now();
+        int cardCount = Math.max(1, totalRedemptions / REDEMPTIONS_PER_CARD);
+        List<CreditCard> cards = cards(cardCount, REDEMPTIONS_PER_CARD);
+        for (CreditCard card : cards) {
+            for (int r = 0; r < card.getRedemptions().size(); r += 2) {
+                Redemption redemption = card.getRedemptions().get(r);
+                redemption.setChecked(true);
+                redemption.setLastCheckedDate(checkedOn);
+                redemption.getCompletedPeriodsThisYear().add(PeriodSet.of(redemption.getFrequency(), checkedOn));
+            }
+            card.getYearlyReimbursementSummaries().put(checkedOn.getYear() - 1, 100.0);
+        }
+        return cards;
+    }
+
+    /**
+     * A repository that serves the given cards and never touches the disk.
+     */
+    public static CreditCardRepository inMemory(List<CreditCard> cards) {
+        return new CreditCardRepository() {
+            @Override
+            public List<CreditCard> loadAll() {
+                return cards;
+            }
+
+            @Override
+            public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+            }
+        };
+    }
+}
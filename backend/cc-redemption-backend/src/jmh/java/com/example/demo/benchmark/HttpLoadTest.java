@@ -0,0 +1,130 @@
+package com.example.demo.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Closed-loop HTTP load test against a running backend: every client sends its next request as soon as the previous
+ * one is answered. 80% of requests read a card and 20% check or uncheck one of its redemptions. Prints throughput
+ * and latency percentiles, so the default Tomcat threads can be compared with
+ * {@code --spring.threads.virtual.enabled=true}.
+ * <p>
+ * Usage: {@code java -cp target/test-classes com.example.demo.benchmark.HttpLoadTest
+ * [baseUrl=http://localhost:8080] [clients=1000] [seconds=30] [cards=200]}
+ * <p>
+ * Use a throwaway data file, as the test adds cards.
+ */
+public final class HttpLoadTest {
+
+    private static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+
+    private HttpLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = (args.length > 0 ? args[0] : "http://localhost:8080") + "/api/creditcards";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int cardCount = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        List<String[]> targets = createCards(http, baseUrl, cardCount);
+
+        long end = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        long[][] latencies = new long[clients][];
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            Thread thread = new Thread(() -> {
+                long[] recorded = new long[1024];
+                int count = 0;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < end) {
+                    String[] target = targets.get(random.nextInt(targets.size()));
+                    HttpRequest request = random.nextInt(5) == 0
+                            ? HttpRequest.newBuilder(URI.create(baseUrl + "/" + target[0] + "/redemptions/" + target[1]
+                                    + "/checked?checked=" + random.nextBoolean()))
+                                    .PUT(HttpRequest.BodyPublishers.noBody()).build()
+                            : HttpRequest.newBuilder(URI.create(baseUrl + "/" + target[0])).GET().build();
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    if (count == recorded.length) {
+                        recorded = Arrays.copyOf(recorded, count * 2);
+                    }
+                    recorded[count++] = System.nanoTime() - sent;
+                }
+                latencies[client] = Arrays.copyOf(recorded, count);
+            }, "load-client-" + c);
+            thread.start();
+            threads.add(thread);
+        }
+        long startedAt = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("clients=%d duration=%.1fs requests=%d errors=%d%n", clients, elapsedSeconds, all.length,
+                errors.get());
+        System.out.printf("throughput=%.0f req/s p50=%.1fms p99=%.1fms max=%.1fms%n", all.length / elapsedSeconds,
+                percentile(all, 0.50), percentile(all, 0.99), all.length == 0 ? 0.0 : all[all.length - 1] / 1e6);
+    }
+
+    /**
+     * Adds cards with one redemption each and returns their (cardId, redemptionId) pairs.
+     */
+    private static List<String[]> createCards(HttpClient http, String baseUrl, int cardCount) throws Exception {
+        List<String[]> targets = new ArrayList<>(cardCount);
+        for (int i = 0; i < cardCount; i++) {
+            String body = "{\"name\":\"Load " + i + "\",\"redemptions\":[{\"name\":\"Credit\",\"amount\":10,"
+                    + "\"frequency\":\"MONTHLY\"}]}";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            Matcher ids = ID.matcher(http.send(request, HttpResponse.BodyHandlers.ofString()).body());
+            String cardId = ids.find() ? ids.group(1) : null;
+            String redemptionId = ids.find() ? ids.group(1) : null;
+            targets.add(new String[] {cardId, redemptionId});
+        }
+        return targets;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)] / 1e6;
+    }
+}
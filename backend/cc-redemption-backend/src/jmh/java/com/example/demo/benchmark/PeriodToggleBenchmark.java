@@ -0,0 +1,48 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of checking and unchecking a redemption's current period, with the former String.format keys in a HashSet
+ * against packed ids in a {@link PeriodSet}. Run with {@code -prof gc}: the packed toggle should report ~0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PeriodToggleBenchmark {
+
+    private final LocalDate date = LocalDate.of(2026, 10, 17);
+    private final Set<String> stringKeys = new HashSet<>();
+    private final PeriodSet packed = new PeriodSet();
+
+    @Benchmark
+    public boolean toggleStringKeys() {
+        String periodId = String.format("%d-M%02d", date.getYear(), date.getMonthValue());
+        stringKeys.add(periodId);
+        return stringKeys.remove(String.format("%d-M%02d", date.getYear(), date.getMonthValue()));
+    }
+
+    @Benchmark
+    public boolean togglePackedPeriods() {
+        packed.add(PeriodSet.of(Redemption.Frequency.MONTHLY, date));
+        return packed.remove(PeriodSet.of(Redemption.Frequency.MONTHLY, date));
+    }
+}
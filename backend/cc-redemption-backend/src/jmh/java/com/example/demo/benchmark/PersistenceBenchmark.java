@@ -0,0 +1,74 @@
+package com.example.demo.benchmark;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.util.JsonDataManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Full load and save of the data file at 10^2, 10^4 and 10^6 redemptions, as indented JSON, compact JSON and a
+ * binary snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int redemptions;
+
+    @Param({"pretty", "compact", "binary"})
+    public String format;
+
+    private Path directory;
+    private JsonDataManager dataManager;
+    private List<CreditCard> cards;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cc-benchmark");
+        dataManager = new JsonDataManager(directory.resolve("creditcards.json").toString(), false, 0, 0,
+                format.equals("pretty"), format.equals("binary") ? "binary" : "json");
+        cards = Datasets.portfolio(redemptions, false);
+        dataManager.saveData(cards);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<CreditCard> load() {
+        return dataManager.loadData();
+    }
+
+    @Benchmark
+    public void save() {
+        dataManager.saveData(cards);
+    }
+}
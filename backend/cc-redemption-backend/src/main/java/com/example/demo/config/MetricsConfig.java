@@ -0,0 +1,38 @@
+package com.example.demo.config;
+
+import com.example.demo.service.CreditCardService;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+/**
+ * Actuator defaults (see management.properties), support for {@code @Timed} on beans and the storage health check.
+ * Prometheus metrics are served at http://127.0.0.1:8081/actuator/prometheus.
+ */
+@Configuration
+@PropertySource("classpath:management.properties")
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    /**
+     * Down while the write-behind queue keeps failing to write its oldest batch, which stays queued until it succeeds.
+     */
+    @Bean
+    public HealthIndicator storageHealthIndicator(CreditCardService creditCardService) {
+        return () -> creditCardService.getWriteBehindStats()
+                .map(stats -> (stats.consecutiveFailures() == 0 ? Health.up() : Health.down())
+                        .withDetail("queueDepth", stats.queueDepth())
+                        .withDetail("consecutiveFailures", stats.consecutiveFailures())
+                        .withDetail("lastError", String.valueOf(stats.lastError()))
+                        .build())
+                .orElseGet(() -> Health.up().build());
+    }
+}
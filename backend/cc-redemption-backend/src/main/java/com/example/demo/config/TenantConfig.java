@@ -0,0 +1,23 @@
+package com.example.demo.config;
+
+import com.example.demo.controller.TenantRequestInterceptor;
+import com.example.demo.service.TenantPartitions;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class TenantConfig {
+
+    @Bean
+    public WebMvcConfigurer tenantRequestConfigurer(TenantPartitions tenantPartitions) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new TenantRequestInterceptor(tenantPartitions))
+                        .addPathPatterns("/api/tenants/**");
+            }
+        };
+    }
+}
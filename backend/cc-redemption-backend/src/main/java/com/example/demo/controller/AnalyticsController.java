@@ -0,0 +1,117 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.CompletionHistory;
+import com.example.demo.service.CreditCardService;
+import com.example.demo.service.TenantPartitions;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Aggregates over the completion history. Captured value comes from precomputed rollups and available credits from
+ * one pass over the redemptions, so neither depends on how many years of completions there are. Only the per-card
+ * completion listing reads the completions themselves. Served for the default portfolio and for each tenant's.
+ */
+@RestController
+@RequestMapping({"/api/creditcards/analytics", "/api/tenants/{tenant}/creditcards/analytics"})
+public class AnalyticsController {
+
+    // Years outside this range are rejected with 400, as day and month numbers of far-off years overflow
+    private static final int MIN_YEAR = 1;
+    private static final int MAX_YEAR = 9999;
+
+    private final TenantPartitions tenantPartitions;
+
+    public AnalyticsController(TenantPartitions tenantPartitions) {
+        this.tenantPartitions = tenantPartitions;
+    }
+
+    /**
+     * Value captured per month, e.g. {@code ?from=2025-01&to=2026-12}; defaults to the last twelve months.
+     */
+    @GetMapping("/monthly")
+    public ResponseEntity<List<CompletionHistory.MonthlyCapture>> getCapturedByMonth(
+            @PathVariable(required = false) String tenant,
+            @RequestParam(required = false) String from, @RequestParam(required = false) String to) {
+        try {
+            YearMonth end = to == null ? YearMonth.now() : YearMonth.parse(to);
+            checkYear(end.getYear());
+            YearMonth start = from == null ? end.minusMonths(11) : YearMonth.parse(from);
+            checkYear(start.getYear());
+            return ResponseEntity.ok(partition(tenant).getCapturedByMonth(start, end));
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Value captured per card, highest first; over all years unless {@code year} is given.
+     */
+    @GetMapping("/cards")
+    public List<CompletionHistory.CardCapture> getCapturedByCard(@PathVariable(required = false) String tenant,
+                                                                 @RequestParam(required = false) Integer year) {
+        return partition(tenant).getCapturedByCard(year == null ? null : checkYear(year));
+    }
+
+    /**
+     * Every completion and uncheck recorded for one card, oldest first.
+     */
+    @GetMapping("/cards/{cardId}/completions")
+    public List<CompletionHistory.Completion> getCompletions(@PathVariable(required = false) String tenant,
+                                                             @PathVariable String cardId) {
+        return partition(tenant).getCompletions(cardId);
+    }
+
+    /**
+     * Captured value, available credits and capture rate per frequency in {@code year} (default: this year).
+     */
+    @GetMapping("/frequencies")
+    public List<CompletionHistory.Capture> getCaptureByFrequency(@PathVariable(required = false) String tenant,
+                                                                 @RequestParam(required = false) Integer year) {
+        return partition(tenant).getCaptureByFrequency(year == null ? LocalDate.now().getYear() : checkYear(year));
+    }
+
+    /**
+     * Captured value, available credits and capture rate per year, from {@code from} (default: five years ago) to
+     * {@code to} (default: this year).
+     */
+    @GetMapping("/capture-rate")
+    public List<CompletionHistory.Capture> getCaptureByYear(@PathVariable(required = false) String tenant,
+                                                            @RequestParam(required = false) Integer from,
+                                                            @RequestParam(required = false) Integer to) {
+        int end = to == null ? LocalDate.now().getYear() : checkYear(to);
+        return partition(tenant).getCaptureByYear(from == null ? Math.max(MIN_YEAR, end - 4) : checkYear(from), end);
+    }
+
+    /**
+     * The year, or 400 if it is outside {@link #MIN_YEAR} to {@link #MAX_YEAR}.
+     */
+    private static int checkYear(int year) {
+        if (year < MIN_YEAR || year > MAX_YEAR) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Year must be between " + MIN_YEAR + " and " + MAX_YEAR + ": " + year);
+        }
+        return year;
+    }
+
+    /**
+     * The tenant's partition, or 400 if the tenant id is invalid.
+     */
+    private CreditCardService partition(String tenant) {
+        try {
+            return tenantPartitions.get(tenant);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.ChangeFeed;
+import com.example.demo.service.CreditCardService;
+import com.example.demo.service.TenantPartitions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes the service's {@link ChangeFeed} to server-sent event subscribers. An idle subscriber is just an open async
+ * request, so thousands of them hold no threads. One dispatcher thread works out what each subscriber is missing:
+ * after each change it queues every subscriber the events past its position, and every {@code heartbeat-ms} a
+ * comment line so proxies keep idle connections open and closed ones are noticed.
+ * <p>
+ * The dispatcher never writes to a connection itself. Each subscriber has its own bounded outbox, drained in order
+ * by one of {@code sender-threads} sender threads, so a client that stops reading only blocks its own writes. A
+ * subscriber is dropped once {@code max-pending} events are waiting for it, or when a single write has been blocked
+ * for {@code write-timeout-ms}; the client reconnects with its Last-Event-ID and catches up or resyncs. A blocked
+ * write keeps its sender thread until the server's socket write timeout fails it.
+ * <p>
+ * Event ids are dataset version tags, the same values the card list returns as ETags. A subscriber that resumes from
+ * a tag gets every event after it, or a {@link ChangeFeed#RESYNC} event if those are no longer kept or the tag is
+ * from an earlier run; it should then re-fetch the cards.
+ * <p>
+ * Each tenant partition has its own feed. A change only walks the subscribers of the feed it was published on, and
+ * open streams keep their partition from being evicted. If it is evicted anyway, its streams are closed; the client
+ * reconnects and gets a {@link ChangeFeed#RESYNC}.
+ * <p>
+ * Streams are closed when the application starts to shut down, before the web server waits for open requests.
+ */
+@Component
+public class ChangeEventStream implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeEventStream.class);
+
+    private static final class Subscriber {
+        private final SseEmitter emitter = new SseEmitter(0L); // No timeout; dead connections fail the heartbeat
+        private final String tenant; // Null for the default portfolio
+        private final Set<Subscriber> peers; // The subscribers of the same feed
+        private long position; // Only read and written by the dispatcher once registered
+        private volatile long sendStartedNanos; // 0 while no write is in progress
+
+        private final ReentrantLock outboxLock = new ReentrantLock();
+        private final ArrayDeque<SseEmitter.SseEventBuilder> outbox = new ArrayDeque<>();
+        private boolean draining; // A sender thread owns the outbox
+        private boolean dropped;
+
+        private Subscriber(String tenant, Set<Subscriber> peers, long position) {
+            this.tenant = tenant;
+            this.peers = peers;
+            this.position = position;
+        }
+    }
+
+    private final TenantPartitions tenantPartitions;
+    private final TaskScheduler taskScheduler;
+    private final long heartbeatMs;
+    private final int maxPending;
+    private final long writeTimeoutNanos;
+    private final ExecutorService senders;
+    private final Counter dropped;
+    private final Map<ChangeFeed, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition signalled = lock.newCondition();
+    private Set<ChangeFeed> changedFeeds = new HashSet<>();
+    private boolean heartbeatDue;
+    private boolean running;
+
+    private Thread dispatcher;
+    private ScheduledFuture<?> heartbeat;
+
+    /**
+     * @param maxPending Events that may wait for one subscriber before it is dropped as too slow.
+     * @param writeTimeoutMs How long one write to a subscriber may block before it is dropped as too slow.
+     * @param senderThreads Threads writing to subscribers' connections.
+     */
+    public ChangeEventStream(TenantPartitions tenantPartitions, TaskScheduler taskScheduler,
+                             @Value("${app.changes.heartbeat-ms:15000}") long heartbeatMs,
+                             @Value("${app.changes.max-pending:1000}") int maxPending,
+                             @Value("${app.changes.write-timeout-ms:30000}") long writeTimeoutMs,
+                             @Value("${app.changes.sender-threads:4}") int senderThreads,
+                             MeterRegistry meterRegistry) {
+        this.tenantPartitions = tenantPartitions;
+        this.taskScheduler = taskScheduler;
+        this.heartbeatMs = heartbeatMs;
+        this.maxPending = Math.max(1, maxPending);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMs);
+        AtomicInteger senderCount = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "change-events-send-" + senderCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dropped = Counter.builder("creditcards.changes.dropped")
+                .description("Change event streams closed because the client fell behind")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.changes.subscribers", subscribers,
+                        feeds -> feeds.values().stream().mapToInt(Set::size).sum())
+                .description("Open change event streams")
+                .register(meterRegistry);
+        tenantPartitions.addListener(new TenantPartitions.Listener() {
+            @Override
+            public void loaded(String tenant, CreditCardService partition) {
+                ChangeFeed feed = partition.getChangeFeed();
+                feed.addListener(() -> signal(feed));
+            }
+
+            @Override
+            public void evicted(String tenant, CreditCardService partition) {
+                Set<Subscriber> orphaned = subscribers.remove(partition.getChangeFeed());
+                if (orphaned != null) {
+                    orphaned.forEach(ChangeEventStream.this::close);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void start() {
+        lock.lock();
+        try {
+            running = true;
+        } finally {
+            lock.unlock();
+        }
+        ChangeFeed defaultFeed = tenantPartitions.get(null).getChangeFeed();
+        defaultFeed.addListener(() -> signal(defaultFeed));
+        dispatcher = new Thread(this::runDispatcher, "change-events");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        heartbeat = taskScheduler.scheduleAtFixedRate(this::signalHeartbeat, Duration.ofMillis(heartbeatMs));
+    }
+
+    @Override
+    public void stop() {
+        heartbeat.cancel(false);
+        lock.lock();
+        try {
+            running = false;
+            signalled.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        subscribers.values().forEach(feedSubscribers -> feedSubscribers.forEach(this::close));
+        subscribers.clear();
+        senders.shutdown(); // Lets the queued completions run
+        try {
+            senders.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens a stream of every change to a tenant's portfolio after {@code resumeFrom}.
+     * @param tenant A tenant id, or null for the default portfolio.
+     * @param resumeFrom An event id or ETag from this stream, or null to receive only changes from now on.
+     */
+    public SseEmitter subscribe(String tenant, String resumeFrom) {
+        ChangeFeed feed = tenantPartitions.get(tenant).getChangeFeed();
+        long current = feed.lastSequence();
+        Set<Subscriber> feedSubscribers = subscribers.computeIfAbsent(feed, key -> ConcurrentHashMap.newKeySet());
+        Subscriber subscriber;
+        if (resumeFrom == null || resumeFrom.isBlank()) {
+            subscriber = new Subscriber(tenant, feedSubscribers, current);
+        } else {
+            OptionalLong position = feed.parseTag(resumeFrom.replace("\"", "").trim());
+            subscriber = new Subscriber(tenant, feedSubscribers, position.orElse(-1));
+        }
+        subscriber.emitter.onCompletion(() -> feedSubscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(() -> feedSubscribers.remove(subscriber));
+        subscriber.emitter.onError(error -> feedSubscribers.remove(subscriber));
+        feedSubscribers.add(subscriber);
+        signal(feed); // Replays what the subscriber missed, or tells it to resync
+        return subscriber.emitter;
+    }
+
+    private void signal(ChangeFeed feed) {
+        lock.lock();
+        try {
+            changedFeeds.add(feed);
+            signalled.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalHeartbeat() {
+        lock.lock();
+        try {
+            heartbeatDue = true;
+            signalled.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runDispatcher() {
+        while (true) {
+            Set<ChangeFeed> changed;
+            boolean sendHeartbeat;
+            lock.lock();
+            try {
+                while (running && changedFeeds.isEmpty() && !heartbeatDue) {
+                    signalled.awaitUninterruptibly();
+                }
+                if (!running) {
+                    return;
+                }
+                changed = changedFeeds;
+                sendHeartbeat = heartbeatDue;
+                changedFeeds = new HashSet<>();
+                heartbeatDue = false;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                for (ChangeFeed feed : changed) {
+                    deliverPendingEvents(feed);
+                }
+                if (sendHeartbeat) {
+                    sendHeartbeats();
+                }
+            } catch (RuntimeException e) {
+                log.error("Delivering change events failed", e);
+            }
+        }
+    }
+
+    private void deliverPendingEvents(ChangeFeed feed) {
+        Set<Subscriber> feedSubscribers = subscribers.get(feed);
+        if (feedSubscribers == null) {
+            return;
+        }
+        long last = feed.lastSequence();
+        // Most subscribers are at the same position, so each backlog is looked up once per pass
+        Map<Long, Optional<List<ChangeFeed.Event>>> backlogs = new HashMap<>();
+        for (Subscriber subscriber : feedSubscribers) {
+            if (subscriber.position >= last) {
+                continue;
+            }
+            Optional<List<ChangeFeed.Event>> backlog = subscriber.position < 0
+                    ? Optional.empty()
+                    : backlogs.computeIfAbsent(subscriber.position, feed::eventsAfter);
+            if (backlog.isEmpty()) {
+                enqueue(subscriber, event(feed, new ChangeFeed.Event(last, ChangeFeed.RESYNC, "")));
+                subscriber.position = last;
+            } else {
+                for (ChangeFeed.Event event : backlog.get()) {
+                    enqueue(subscriber, event(feed, event));
+                    subscriber.position = event.sequence();
+                }
+            }
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder event(ChangeFeed feed, ChangeFeed.Event event) {
+        return SseEmitter.event()
+                .id(feed.tag(event.sequence()))
+                .name(event.name())
+                .data(event.data());
+    }
+
+    private void sendHeartbeats() {
+        long now = System.nanoTime();
+        for (Set<Subscriber> feedSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : feedSubscribers) {
+                long sendStarted = subscriber.sendStartedNanos;
+                if (sendStarted != 0 && now - sendStarted > writeTimeoutNanos) {
+                    drop(subscriber, "a write has been blocked for over " + writeTimeoutNanos / 1_000_000 + " ms");
+                    continue;
+                }
+                enqueue(subscriber, SseEmitter.event().comment("heartbeat"));
+                if (subscriber.tenant != null) {
+                    tenantPartitions.touch(subscriber.tenant); // An open stream keeps its partition resident
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an event to the subscriber's outbox, starting a sender if none is draining it. Never blocks on the
+     * connection.
+     */
+    private void enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        boolean full = false;
+        boolean startSender = false;
+        subscriber.outboxLock.lock();
+        try {
+            if (subscriber.dropped) {
+                return;
+            }
+            if (subscriber.outbox.size() >= maxPending) {
+                full = true;
+            } else {
+                subscriber.outbox.add(event);
+                startSender = !subscriber.draining;
+                subscriber.draining = true;
+            }
+        } finally {
+            subscriber.outboxLock.unlock();
+        }
+        if (full) {
+            drop(subscriber, maxPending + " events are waiting to be sent");
+        } else if (startSender) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * Sends the subscriber's queued events in order until its outbox is empty. Runs on a sender thread; only one
+     * drains a given subscriber at a time.
+     */
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            SseEmitter.SseEventBuilder event;
+            boolean complete = false;
+            subscriber.outboxLock.lock();
+            try {
+                event = subscriber.dropped ? null : subscriber.outbox.poll();
+                if (event == null) {
+                    subscriber.draining = false;
+                    complete = subscriber.dropped;
+                }
+            } finally {
+                subscriber.outboxLock.unlock();
+            }
+            if (event == null) {
+                if (complete) {
+                    subscriber.emitter.complete();
+                }
+                return;
+            }
+            subscriber.sendStartedNanos = System.nanoTime();
+            try {
+                subscriber.emitter.send(event);
+            } catch (IOException e) {
+                subscriber.peers.remove(subscriber); // The container completes the emitter
+                subscriber.outboxLock.lock();
+                try {
+                    subscriber.dropped = true;
+                    subscriber.outbox.clear();
+                    subscriber.draining = false;
+                } finally {
+                    subscriber.outboxLock.unlock();
+                }
+                return;
+            } finally {
+                subscriber.sendStartedNanos = 0;
+            }
+        }
+    }
+
+    /**
+     * Stops sending to a subscriber that fell behind and closes its stream once no write to it is in progress.
+     */
+    private void drop(Subscriber subscriber, String reason) {
+        if (close(subscriber)) {
+            dropped.increment();
+            log.info("Closed a change stream{} because {}",
+                    subscriber.tenant == null ? "" : " of tenant " + subscriber.tenant, reason);
+        }
+    }
+
+    /**
+     * Removes the subscriber and completes its stream, on a sender thread so that a blocked write cannot hold up
+     * the caller. Returns false if it was already closed.
+     */
+    private boolean close(Subscriber subscriber) {
+        subscriber.peers.remove(subscriber);
+        boolean completeNow;
+        subscriber.outboxLock.lock();
+        try {
+            if (subscriber.dropped) {
+                return false;
+            }
+            subscriber.dropped = true;
+            subscriber.outbox.clear();
+            completeNow = !subscriber.draining; // Otherwise the sender completes it after its current write
+        } finally {
+            subscriber.outboxLock.unlock();
+        }
+        if (completeNow) {
+            try {
+                senders.execute(subscriber.emitter::complete);
+            } catch (RejectedExecutionException e) {
+                subscriber.emitter.complete(); // Shutting down, and nothing is being written
+            }
+        }
+        return true;
+    }
+}
@@ -1,50 +1,178 @@
 package com.example.demo.controller;
 
+import com.example.demo.model.BatchOperation;
+import com.example.demo.model.BatchResult;
+import com.example.demo.model.CardPage;
+import com.example.demo.model.CardSummary;
 import com.example.demo.model.CreditCard;
+import com.example.demo.model.ImportResult;
 import com.example.demo.model.Redemption;
+import com.example.demo.repository.WriteBehindCreditCardRepository;
+import com.example.demo.service.CardFilter;
+import com.example.demo.service.ChangeFeed;
 import com.example.demo.service.CreditCardService;
+import com.example.demo.service.OutstandingCredits;
+import com.example.demo.service.TenantPartitions;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
 
+/**
+ * Every route is served both for the default portfolio under {@code /api/creditcards} and for a tenant's portfolio
+ * under {@code /api/tenants/{tenant}/creditcards} (see {@link TenantPartitions}).
+ */
 @RestController
-@RequestMapping("/api/creditcards")
+@RequestMapping({"/api/creditcards", "/api/tenants/{tenant}/creditcards"})
 public class CreditCardController {
 
-    private final CreditCardService creditCardService;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_EXPIRING_WITHIN_DAYS = 3660; // About ten years
+    // Mutations sent with "X-Durability: write-through" are on disk before the response, even with write-behind on
+    private static final String DURABILITY_HEADER = "X-Durability";
+    private static final String NDJSON = "application/x-ndjson";
 
-    public CreditCardController(CreditCardService creditCardService) {
-        this.creditCardService = creditCardService;
+    private final TenantPartitions tenantPartitions;
+    private final ObjectMapper objectMapper;
+    private final ChangeEventStream changeEventStream;
+
+    /**
+     * The serialized card list and the dataset version it was read at.
+     */
+    private record CachedBody(long version, byte[] json) {
     }
 
+    // Per partition; an evicted partition's entry goes away with its feed
+    private final Map<ChangeFeed, CachedBody> cachedCards = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public CreditCardController(TenantPartitions tenantPartitions, ObjectMapper objectMapper,
+                                ChangeEventStream changeEventStream) {
+        this.tenantPartitions = tenantPartitions;
+        this.objectMapper = objectMapper;
+        this.changeEventStream = changeEventStream;
+    }
+
+    /**
+     * The full card list, tagged with the dataset version. A poll whose If-None-Match carries the current ETag gets
+     * 304 without the list being read; otherwise the serialized list is reused until the next change.
+     */
     @GetMapping
-    public List<CreditCard> getAllCreditCards() {
-        return creditCardService.getAllCreditCards();
+    public ResponseEntity<byte[]> getAllCreditCards(@PathVariable(required = false) String tenant,
+                                                    WebRequest request) throws JsonProcessingException {
+        CreditCardService creditCardService = partition(tenant);
+        long version = creditCardService.getDatasetVersion();
+        String etag = etag(creditCardService, version);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        CachedBody cached = cachedCards.get(creditCardService.getChangeFeed());
+        if (cached == null || cached.version() != version) {
+            // Read after taking the version, so the body holds at least every change up to it
+            cached = new CachedBody(version, objectMapper.writeValueAsBytes(creditCardService.getAllCreditCards()));
+            cachedCards.put(creditCardService.getChangeFeed(), cached);
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(cached.json());
+    }
+
+    /**
+     * Server-sent events for every change from now on. Pass the ETag of the card list as {@code after} to also
+     * receive everything since it was read; reconnecting clients resume from their Last-Event-ID.
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@PathVariable(required = false) String tenant,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                    @RequestParam(required = false) String after) {
+        partition(tenant); // Rejects an invalid tenant id before the stream is opened
+        return changeEventStream.subscribe(tenant, lastEventId != null ? lastEventId : after);
     }
 
+    /**
+     * Cursor-paginated, filtered listing. With {@code view=summary} only id, name and currentYearTotal are returned.
+     */
+    @GetMapping("/page")
+    public ResponseEntity<CardPage<?>> getCreditCardPage(@PathVariable(required = false) String tenant,
+                                                         @RequestParam(required = false) String cursor,
+                                                         @RequestParam(defaultValue = "50") int limit,
+                                                         @RequestParam(required = false) String namePrefix,
+                                                         @RequestParam(required = false) Redemption.Frequency frequency,
+                                                         @RequestParam(required = false) Boolean checked,
+                                                         @RequestParam(required = false) Double minOutstanding,
+                                                         @RequestParam(defaultValue = "full") String view) {
+        CardFilter filter = new CardFilter(namePrefix, frequency, checked, minOutstanding);
+        CardPage<CreditCard> page;
+        try {
+            page = partition(tenant).getCreditCardPage(cursor, filter, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if ("summary".equals(view)) {
+            return ResponseEntity.ok(new CardPage<>(page.getItems().stream().map(CardSummary::of).toList(),
+                    page.getNextCursor()));
+        }
+        return ResponseEntity.ok(page);
+    }
+
+    /**
+     * One card, tagged with the version of its last change; 304 if If-None-Match carries that ETag.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<CreditCard> getCreditCardById(@PathVariable String id) {
-        return creditCardService.getCreditCardById(id)
-                .map(ResponseEntity::ok)
+    public ResponseEntity<CreditCard> getCreditCardById(@PathVariable(required = false) String tenant,
+                                                        @PathVariable String id, WebRequest request) {
+        CreditCardService creditCardService = partition(tenant);
+        String etag = etag(creditCardService, creditCardService.getCardVersion(id));
+        Optional<CreditCard> card = creditCardService.getCreditCardById(id);
+        if (card.isPresent() && request.checkNotModified(etag)) {
+            return null;
+        }
+        return card.map(found -> ResponseEntity.ok().eTag(etag).body(found))
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping
-    public CreditCard addCreditCard(@RequestBody CreditCard creditCard) {
-        return creditCardService.addCreditCard(creditCard);
+    public CreditCard addCreditCard(@PathVariable(required = false) String tenant, @RequestBody CreditCard creditCard,
+                                    @RequestHeader(value = DURABILITY_HEADER, required = false) String durability) {
+        CreditCardService creditCardService = partition(tenant);
+        return awaitDurability(creditCardService, durability, creditCardService.addCreditCard(creditCard));
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<CreditCard> updateCreditCard(@PathVariable String id, @RequestBody CreditCard creditCard) {
-        return creditCardService.updateCreditCard(id, creditCard)
+    public ResponseEntity<CreditCard> updateCreditCard(@PathVariable(required = false) String tenant,
+                                                       @PathVariable String id, @RequestBody CreditCard creditCard,
+                                                       @RequestHeader(value = DURABILITY_HEADER, required = false) String durability) {
+        CreditCardService creditCardService = partition(tenant);
+        return awaitDurability(creditCardService, durability, creditCardService.updateCreditCard(id, creditCard))
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteCreditCard(@PathVariable String id) {
-        if (creditCardService.deleteCreditCard(id)) {
+    public ResponseEntity<Void> deleteCreditCard(@PathVariable(required = false) String tenant, @PathVariable String id,
+                                                 @RequestHeader(value = DURABILITY_HEADER, required = false) String durability) {
+        CreditCardService creditCardService = partition(tenant);
+        if (awaitDurability(creditCardService, durability, creditCardService.deleteCreditCard(id))) {
             return ResponseEntity.noContent().build();
         } else {
             return ResponseEntity.notFound().build();
@@ -52,15 +180,21 @@ public class CreditCardController {
     }
 
     @PostMapping("/{cardId}/redemptions")
-    public ResponseEntity<Redemption> addRedemption(@PathVariable String cardId, @RequestBody Redemption redemption) {
-        return creditCardService.addRedemption(cardId, redemption)
+    public ResponseEntity<Redemption> addRedemption(@PathVariable(required = false) String tenant,
+                                                    @PathVariable String cardId, @RequestBody Redemption redemption,
+                                                    @RequestHeader(value = DURABILITY_HEADER, required = false) String durability) {
+        CreditCardService creditCardService = partition(tenant);
+        return awaitDurability(creditCardService, durability, creditCardService.addRedemption(cardId, redemption))
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{cardId}/redemptions/{redemptionId}")
-    public ResponseEntity<Void> deleteRedemption(@PathVariable String cardId, @PathVariable String redemptionId) {
-        if (creditCardService.deleteRedemption(cardId, redemptionId)) {
+    public ResponseEntity<Void> deleteRedemption(@PathVariable(required = false) String tenant,
+                                                 @PathVariable String cardId, @PathVariable String redemptionId,
+                                                 @RequestHeader(value = DURABILITY_HEADER, required = false) String durability) {
+        CreditCardService creditCardService = partition(tenant);
+        if (awaitDurability(creditCardService, durability, creditCardService.deleteRedemption(cardId, redemptionId))) {
             return ResponseEntity.noContent().build();
         } else {
             return ResponseEntity.notFound().build();
@@ -68,14 +202,136 @@ public class CreditCardController {
     }
 
     @PutMapping("/{cardId}/redemptions/{redemptionId}/checked")
-    public ResponseEntity<Redemption> updateRedemptionStatus(@PathVariable String cardId, @PathVariable String redemptionId, @RequestParam boolean checked) {
-        return creditCardService.updateRedemptionStatus(cardId, redemptionId, checked)
+    public ResponseEntity<Redemption> updateRedemptionStatus(@PathVariable(required = false) String tenant,
+                                                             @PathVariable String cardId, @PathVariable String redemptionId, @RequestParam boolean checked,
+                                                             @RequestHeader(value = DURABILITY_HEADER, required = false) String durability) {
+        CreditCardService creditCardService = partition(tenant);
+        return awaitDurability(creditCardService, durability,
+                creditCardService.updateRedemptionStatus(cardId, redemptionId, checked))
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Applies many redemption operations in one request. Either all are applied (200) or none is (400);
+     * the body reports the outcome of every item either way.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BatchResult> applyBatch(@PathVariable(required = false) String tenant,
+                                                  @RequestBody List<BatchOperation> operations,
+                                                  @RequestHeader(value = DURABILITY_HEADER, required = false) String durability) {
+        CreditCardService creditCardService = partition(tenant);
+        BatchResult result = awaitDurability(creditCardService, durability, creditCardService.applyBatch(operations));
+        return result.isApplied() ? ResponseEntity.ok(result) : ResponseEntity.badRequest().body(result);
+    }
+
+    /**
+     * Adds the cards in an NDJSON body (one card per line, as for {@code POST /api/creditcards}) in one change.
+     * The body is parsed as it arrives. Either every card is added (200) or none is (400), with the errors per card.
+     */
+    @PostMapping(value = "/import", consumes = NDJSON)
+    public ResponseEntity<ImportResult> importCreditCards(@PathVariable(required = false) String tenant,
+                                                          @RequestHeader(value = DURABILITY_HEADER, required = false) String durability,
+                                                          InputStream body) throws IOException {
+        CreditCardService creditCardService = partition(tenant);
+        List<CreditCard> cards = new ArrayList<>();
+        try (MappingIterator<CreditCard> lines = objectMapper.readerFor(CreditCard.class).readValues(body)) {
+            while (lines.hasNextValue()) {
+                cards.add(lines.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            String error = "Unreadable card" + (e.getLocation() == null ? "" : " at line " + e.getLocation().getLineNr())
+                    + ": " + e.getOriginalMessage();
+            return ResponseEntity.badRequest().body(new ImportResult(false, 0, 0,
+                    List.of(new ImportResult.Problem(cards.size() + 1, error))));
+        }
+        ImportResult result = awaitDurability(creditCardService, durability,
+                creditCardService.importCreditCards(cards));
+        return result.isImported() ? ResponseEntity.ok(result) : ResponseEntity.badRequest().body(result);
+    }
+
+    /**
+     * Every card as NDJSON, one per line in the order they were added, in the format the import accepts. Cards are
+     * serialized one at a time straight to the response on the request thread, so the full list is never held in
+     * memory and a long export is not cut off by the async request timeout.
+     */
+    @GetMapping(value = "/export", produces = NDJSON)
+    public void exportCreditCards(@PathVariable(required = false) String tenant, HttpServletResponse response)
+            throws IOException {
+        CreditCardService creditCardService = partition(tenant);
+        ObjectWriter writer = objectMapper.writerFor(CreditCard.class);
+        response.setContentType(NDJSON);
+        OutputStream out = new BufferedOutputStream(response.getOutputStream(), 64 * 1024);
+        Iterator<CreditCard> cards = creditCardService.streamCreditCards().iterator();
+        while (cards.hasNext()) {
+            out.write(writer.writeValueAsBytes(cards.next()));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
     @GetMapping("/reimbursements/current-year-total")
-    public double getCurrentYearReimbursementTotal() {
-        return creditCardService.getCurrentYearReimbursementTotal();
+    public ResponseEntity<Double> getCurrentYearReimbursementTotal(@PathVariable(required = false) String tenant,
+                                                                   WebRequest request) {
+        CreditCardService creditCardService = partition(tenant);
+        String etag = etag(creditCardService, creditCardService.getDatasetVersion());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(creditCardService.getCurrentYearReimbursementTotal());
+    }
+
+    /**
+     * The unchecked credits that expire soonest, e.g. {@code ?limit=10&withinDays=31}, with the count and total value
+     * of every credit expiring within the window; 400 unless the window is 0 to 3660 days.
+     */
+    @GetMapping("/redemptions/expiring")
+    public ResponseEntity<OutstandingCredits.Expiring> getExpiringCredits(
+            @PathVariable(required = false) String tenant,
+            @RequestParam(defaultValue = "10") int limit, @RequestParam(defaultValue = "31") int withinDays) {
+        if (withinDays < 0 || withinDays > MAX_EXPIRING_WITHIN_DAYS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(partition(tenant).getExpiringCredits(Math.max(0, Math.min(limit, MAX_PAGE_SIZE)),
+                withinDays));
+    }
+
+    /**
+     * Queue depth and flush latency of write-behind persistence; 404 when it is disabled.
+     */
+    @GetMapping("/persistence/write-behind")
+    public ResponseEntity<WriteBehindCreditCardRepository.Stats> getWriteBehindStats(
+            @PathVariable(required = false) String tenant) {
+        return partition(tenant).getWriteBehindStats()
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * The tenant's partition, or 400 if the tenant id is invalid.
+     */
+    private CreditCardService partition(String tenant) {
+        try {
+            return tenantPartitions.get(tenant);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    private static String etag(CreditCardService creditCardService, long version) {
+        return "\"" + creditCardService.getChangeFeed().tag(version) + "\"";
+    }
+
+    private static <T> T awaitDurability(CreditCardService creditCardService, String durability, T result) {
+        if ("write-through".equalsIgnoreCase(durability)) {
+            try {
+                creditCardService.flush();
+            } catch (RuntimeException e) {
+                // Applied in memory and still queued, but not durable as the caller asked
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "The change is applied but could not be written to storage yet", e);
+            }
+        }
+        return result;
     }
 }
@@ -0,0 +1,64 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.TenantPartitions;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Holds the tenant's partition for as long as a request under {@code /api/tenants/{tenant}} runs, so it is not
+ * evicted in the middle of e.g. a long import. A change stream releases it once the stream is open; heartbeats keep
+ * the partition resident from then on.
+ */
+public class TenantRequestInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String ACQUIRED = TenantRequestInterceptor.class.getName() + ".tenant";
+
+    private final TenantPartitions tenantPartitions;
+
+    public TenantRequestInterceptor(TenantPartitions tenantPartitions) {
+        this.tenantPartitions = tenantPartitions;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true; // Released when the async part started
+        }
+        Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        Object tenant = variables instanceof Map<?, ?> map ? map.get("tenant") : null;
+        if (tenant instanceof String id) {
+            try {
+                tenantPartitions.acquire(id);
+                request.setAttribute(ACQUIRED, id);
+            } catch (IllegalArgumentException e) {
+                // The controller answers 400
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        release(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        release(request);
+    }
+
+    private void release(HttpServletRequest request) {
+        Object tenant = request.getAttribute(ACQUIRED);
+        if (tenant != null) {
+            request.removeAttribute(ACQUIRED);
+            tenantPartitions.release((String) tenant);
+        }
+    }
+}
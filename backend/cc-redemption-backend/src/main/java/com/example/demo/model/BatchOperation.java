@@ -0,0 +1,25 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One redemption mutation within a batch request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchOperation {
+    private Type type;
+    private String cardId;
+    private String redemptionId; // For DELETE, CHECK and UNCHECK
+    private Redemption redemption; // For ADD
+
+    public enum Type {
+        ADD,
+        DELETE,
+        CHECK,
+        UNCHECK
+    }
+}
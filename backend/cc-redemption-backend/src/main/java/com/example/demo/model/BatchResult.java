@@ -0,0 +1,35 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch request. A batch is all-or-nothing: if any item fails validation, {@code applied} is false
+ * and nothing was changed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResult {
+    private boolean applied;
+    private List<Item> results;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private Status status;
+        private Redemption redemption; // State after the operation; null for DELETE and failures
+        private String error;
+    }
+
+    public enum Status {
+        APPLIED,
+        NOT_APPLIED, // Valid, but the batch was rejected because of another item
+        NOT_FOUND,
+        INVALID
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lightweight projection of a card for list views.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardSummary {
+    private String id;
+    private String name;
+    private double currentYearTotal;
+
+    public static CardSummary of(CreditCard card) {
+        return new CardSummary(card.getId(), card.getName(), card.getCurrentYearTotal());
+    }
+}
@@ -16,5 +16,5 @@ public class CreditCard {
     private String description;
     private List<Redemption> redemptions;
     private Map<Integer, Double> yearlyReimbursementSummaries = new java.util.HashMap<>();
-    private transient double currentYearTotal;
+    private transient volatile double currentYearTotal;
 }
@@ -0,0 +1,29 @@
+package com.example.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. An import is all-or-nothing: if any card is invalid, {@code imported} is false, nothing
+ * was added and {@code errors} lists every invalid card.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportResult {
+    private boolean imported;
+    private int cards;
+    private int redemptions;
+    private List<Problem> errors;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Problem {
+        private int item; // Position of the card in the input, from 1
+        private String error;
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The periods a redemption has been completed in, stored as one bitmask per year: bits 0-11 are the months,
+ * 12-15 the quarters, 16-17 the half-years and 18 the whole year. A period is identified by a packed int
+ * ({@code year << 5 | bit}), so checking and unchecking never allocates once the year is present.
+ * <p>
+ * In JSON the set is still written as the array of string identifiers used before ("2026-M10", "2026-Q4",
+ * "2026-H2", "2026-Y"), so existing data files load unchanged.
+ * <p>
+ * Mutations are synchronized; reads are lock-free and see each year's mask atomically.
+ */
+@JsonSerialize(using = PeriodSet.Serializer.class)
+@JsonDeserialize(using = PeriodSet.Deserializer.class)
+public final class PeriodSet {
+
+    private static final int QUARTER_BIT = 12;
+    private static final int HALF_BIT = 16;
+    private static final int YEAR_BIT = 18;
+    private static final long[] EMPTY = new long[0];
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Each entry is (year << 32 | mask). A year whose mask drops to zero keeps its slot, so re-checking is free.
+    private volatile long[] entries = EMPTY;
+
+    /**
+     * The period of the given frequency that contains {@code date}.
+     */
+    public static int of(Redemption.Frequency frequency, LocalDate date) {
+        int month = date.getMonthValue();
+        int bit = switch (frequency) {
+            case MONTHLY -> month - 1;
+            case QUARTERLY -> QUARTER_BIT + (month - 1) / 3;
+            case BIANNUAL -> HALF_BIT + (month <= 6 ? 0 : 1);
+            case YEARLY -> YEAR_BIT;
+        };
+        return date.getYear() << 5 | bit;
+    }
+
+    public static int year(int period) {
+        return period >> 5;
+    }
+
+    /**
+     * @return The string identifier of a period, e.g. "2026-M10".
+     */
+    public static String key(int period) {
+        int bit = period & 31;
+        String suffix;
+        if (bit < QUARTER_BIT) {
+            suffix = bit < 9 ? "M0" + (bit + 1) : "M" + (bit + 1);
+        } else if (bit < HALF_BIT) {
+            suffix = "Q" + (bit - QUARTER_BIT + 1);
+        } else if (bit < YEAR_BIT) {
+            suffix = "H" + (bit - HALF_BIT + 1);
+        } else {
+            suffix = "Y";
+        }
+        return year(period) + "-" + suffix;
+    }
+
+    /**
+     * @return The first day of the period.
+     */
+    public static LocalDate startDate(int period) {
+        int bit = period & 31;
+        int month;
+        if (bit < QUARTER_BIT) {
+            month = bit + 1;
+        } else if (bit < HALF_BIT) {
+            month = (bit - QUARTER_BIT) * 3 + 1;
+        } else if (bit < YEAR_BIT) {
+            month = (bit - HALF_BIT) * 6 + 1;
+        } else {
+            month = 1;
+        }
+        return LocalDate.of(year(period), month, 1);
+    }
+
+    /**
+     * Parses a string identifier as produced by {@link #key(int)}.
+     * @throws IllegalArgumentException if it is not one.
+     */
+    public static int parse(String key) {
+        int dash = key.indexOf('-');
+        if (dash <= 0 || dash == key.length() - 1) {
+            throw new IllegalArgumentException("Invalid period identifier: " + key);
+        }
+        try {
+            int year = Integer.parseInt(key, 0, dash, 10);
+            String suffix = key.substring(dash + 1);
+            int bit = switch (suffix.charAt(0)) {
+                case 'M' -> checkRange(suffix, 12) - 1;
+                case 'Q' -> QUARTER_BIT + checkRange(suffix, 4) - 1;
+                case 'H' -> HALF_BIT + checkRange(suffix, 2) - 1;
+                case 'Y' -> suffix.length() == 1 ? YEAR_BIT : -1;
+                default -> -1;
+            };
+            if (bit < 0 || year < 0) {
+                throw new IllegalArgumentException("Invalid period identifier: " + key);
+            }
+            return year << 5 | bit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid period identifier: " + key);
+        }
+    }
+
+    private static int checkRange(String suffix, int max) {
+        int value = Integer.parseInt(suffix, 1, suffix.length(), 10);
+        return value >= 1 && value <= max ? value : -1;
+    }
+
+    /**
+     * @return True if the period was not already present.
+     */
+    public synchronized boolean add(int period) {
+        int year = year(period);
+        long bit = 1L << (period & 31);
+        long[] current = entries;
+        for (int i = 0; i < current.length; i++) {
+            long entry = (long) ENTRIES.getAcquire(current, i);
+            if ((int) (entry >> 32) == year) {
+                if ((entry & bit) != 0) {
+                    return false;
+                }
+                ENTRIES.setRelease(current, i, entry | bit);
+                return true;
+            }
+        }
+        long[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = (long) year << 32 | bit;
+        entries = grown;
+        return true;
+    }
+
+    /**
+     * @return True if the period was present.
+     */
+    public synchronized boolean remove(int period) {
+        int year = year(period);
+        long bit = 1L << (period & 31);
+        long[] current = entries;
+        for (int i = 0; i < current.length; i++) {
+            long entry = (long) ENTRIES.getAcquire(current, i);
+            if ((int) (entry >> 32) == year) {
+                if ((entry & bit) == 0) {
+                    return false;
+                }
+                ENTRIES.setRelease(current, i, entry & ~bit);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean contains(int period) {
+        long mask = mask(year(period));
+        return (mask & 1L << (period & 31)) != 0;
+    }
+
+    /**
+     * Removes every period in {@code year} or earlier.
+     * @return True if anything was removed.
+     */
+    public synchronized boolean removeYearsThrough(int year) {
+        long[] current = entries;
+        int kept = 0;
+        boolean removed = false;
+        long[] remaining = new long[current.length];
+        for (int i = 0; i < current.length; i++) {
+            long entry = (long) ENTRIES.getAcquire(current, i);
+            if ((int) (entry >> 32) > year) {
+                remaining[kept++] = entry;
+            } else if ((int) entry != 0) {
+                removed = true;
+            }
+        }
+        entries = kept == 0 ? EMPTY : Arrays.copyOf(remaining, kept);
+        return removed;
+    }
+
+    public int size() {
+        long[] current = entries;
+        int size = 0;
+        for (int i = 0; i < current.length; i++) {
+            size += Integer.bitCount((int) (long) ENTRIES.getAcquire(current, i));
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of periods completed in the given year.
+     */
+    public int size(int year) {
+        return Long.bitCount(mask(year));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return The earliest year with a completed period, or -1 if there is none.
+     */
+    public int firstYear() {
+        long[] current = entries;
+        int first = -1;
+        for (int i = 0; i < current.length; i++) {
+            long entry = (long) ENTRIES.getAcquire(current, i);
+            int year = (int) (entry >> 32);
+            if ((int) entry != 0 && (first == -1 || year < first)) {
+                first = year;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @return All periods, ordered by year and then by bit.
+     */
+    public int[] periods() {
+        long[] live = entries;
+        long[] current = new long[live.length];
+        int count = 0;
+        for (int i = 0; i < live.length; i++) {
+            current[i] = (long) ENTRIES.getAcquire(live, i);
+            count += Integer.bitCount((int) current[i]);
+        }
+        Arrays.sort(current);
+        int[] periods = new int[count];
+        int next = 0;
+        for (long entry : current) {
+            int year = (int) (entry >> 32);
+            int mask = (int) entry;
+            while (mask != 0) {
+                periods[next++] = year << 5 | Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+            }
+        }
+        return periods;
+    }
+
+    /**
+     * @return The string identifiers of all periods, ordered by year and then by bit.
+     */
+    public List<String> keys() {
+        int[] periods = periods();
+        List<String> keys = new ArrayList<>(periods.length);
+        for (int period : periods) {
+            keys.add(key(period));
+        }
+        return keys;
+    }
+
+    private long mask(int year) {
+        long[] current = entries;
+        for (int i = 0; i < current.length; i++) {
+            long entry = (long) ENTRIES.getAcquire(current, i);
+            if ((int) (entry >> 32) == year) {
+                return entry & 0xFFFFFFFFL;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PeriodSet periods && keys().equals(periods.keys());
+    }
+
+    @Override
+    public int hashCode() {
+        return keys().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return keys().toString();
+    }
+
+    public static class Serializer extends JsonSerializer<PeriodSet> {
+        @Override
+        public void serialize(PeriodSet periods, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartArray();
+            for (String key : periods.keys()) {
+                generator.writeString(key);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<PeriodSet> {
+        @Override
+        public PeriodSet deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (!parser.isExpectedStartArrayToken()) {
+                return (PeriodSet) context.handleUnexpectedToken(PeriodSet.class, parser);
+            }
+            PeriodSet periods = new PeriodSet();
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                String key = parser.getValueAsString();
+                try {
+                    periods.add(parse(key));
+                } catch (IllegalArgumentException | NullPointerException e) {
+                    return (PeriodSet) context.handleWeirdStringValue(PeriodSet.class, key, "not a period identifier");
+                }
+            }
+            return periods;
+        }
+    }
+}
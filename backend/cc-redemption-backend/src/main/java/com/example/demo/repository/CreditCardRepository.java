@@ -0,0 +1,45 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.util.ChangeRecord;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Storage for the card portfolio. {@link com.example.demo.service.CreditCardService} keeps the working set in memory
+ * and describes each mutation as {@link ChangeRecord}s; implementations decide how much has to be written for them.
+ * The backend is chosen with {@code app.data.store} ({@code json} by default, or {@code h2}).
+ */
+public interface CreditCardRepository {
+
+    /**
+     * Loads every card, in the order they were added.
+     */
+    List<CreditCard> loadAll();
+
+    /**
+     * Persists a group of changes as one unit.
+     * @param snapshot The full current portfolio, for implementations that can only write everything at once.
+     *                 Only called when needed.
+     */
+    void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot);
+
+    default void persist(ChangeRecord change, Supplier<List<CreditCard>> snapshot) {
+        persist(List.of(change), snapshot);
+    }
+
+    /**
+     * Blocks until every change passed to {@link #persist} has been written. Repositories that write synchronously
+     * have nothing to do.
+     */
+    default void flush() {
+    }
+
+    /**
+     * @return The bytes the stored portfolio takes up on disk, or -1 if unknown.
+     */
+    default long sizeOnDisk() {
+        return -1;
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import com.example.demo.util.ChangeRecord;
+import com.example.demo.util.JsonDataManager;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import jakarta.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Stores the portfolio in an embedded, file-based H2 database with one table each for cards, redemptions,
+ * completed periods and yearly summaries. Every change touches only the rows of the card or redemption it names,
+ * so checking off a redemption is a single-row update plus its period rows.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.data.store", havingValue = "h2")
+public class JdbcCreditCardRepository implements CreditCardRepository {
+
+    private static final String FILE_URL_PREFIX = "jdbc:h2:file:";
+
+    private static final String[] SCHEMA = {
+            """
+            CREATE TABLE IF NOT EXISTS credit_card (
+                id VARCHAR(64) PRIMARY KEY,
+                seq BIGINT GENERATED BY DEFAULT AS IDENTITY UNIQUE,
+                name VARCHAR(255),
+                description VARCHAR(4000)
+            )""",
+            """
+            CREATE TABLE IF NOT EXISTS redemption (
+                id VARCHAR(64) PRIMARY KEY,
+                card_id VARCHAR(64) NOT NULL REFERENCES credit_card(id) ON DELETE CASCADE,
+                position INT NOT NULL,
+                name VARCHAR(255),
+                amount DOUBLE PRECISION NOT NULL,
+                frequency VARCHAR(16),
+                checked BOOLEAN NOT NULL,
+                last_checked_date DATE
+            )""",
+            "CREATE INDEX IF NOT EXISTS idx_redemption_card ON redemption(card_id, position)",
+            """
+            CREATE TABLE IF NOT EXISTS completed_period (
+                redemption_id VARCHAR(64) NOT NULL REFERENCES redemption(id) ON DELETE CASCADE,
+                period VARCHAR(16) NOT NULL,
+                PRIMARY KEY (redemption_id, period)
+            )""",
+            """
+            CREATE TABLE IF NOT EXISTS yearly_summary (
+                card_id VARCHAR(64) NOT NULL REFERENCES credit_card(id) ON DELETE CASCADE,
+                summary_year INT NOT NULL,
+                total DOUBLE PRECISION NOT NULL,
+                PRIMARY KEY (card_id, summary_year)
+            )"""
+    };
+
+    private final JdbcConnectionPool pool;
+    private final Path databaseFile;
+
+    public JdbcCreditCardRepository(@Value("${app.data.jdbc.url:jdbc:h2:file:./creditcards-db}") String url,
+                                    @Value("${app.data.jdbc.migrate-json:true}") boolean migrateJson,
+                                    JsonDataManager jsonDataManager) {
+        this.pool = JdbcConnectionPool.create(url, "sa", "");
+        this.databaseFile = url.startsWith(FILE_URL_PREFIX)
+                ? Path.of(url.substring(FILE_URL_PREFIX.length()).split(";", 2)[0] + ".mv.db")
+                : null;
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not initialize the credit card database", e);
+        }
+        if (migrateJson) {
+            new JsonToJdbcMigrator(jsonDataManager, this).migrateIfEmpty();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.dispose();
+    }
+
+    /**
+     * @return The size of the database file, or -1 for in-memory and remote databases.
+     */
+    @Override
+    public long sizeOnDisk() {
+        return databaseFile == null ? -1 : databaseFile.toFile().length();
+    }
+
+    public boolean isEmpty() {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM credit_card")) {
+            rows.next();
+            return rows.getLong(1) == 0;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the credit card database", e);
+        }
+    }
+
+    @Override
+    public List<CreditCard> loadAll() {
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            Map<String, CreditCard> cards = new LinkedHashMap<>();
+            try (ResultSet rows = statement.executeQuery("SELECT id, name, description FROM credit_card ORDER BY seq")) {
+                while (rows.next()) {
+                    CreditCard card = new CreditCard(rows.getString(1), rows.getString(2), rows.getString(3),
+                            new ArrayList<>(), new HashMap<>(), 0.0);
+                    cards.put(card.getId(), card);
+                }
+            }
+            Map<String, Redemption> redemptions = new HashMap<>();
+            try (ResultSet rows = statement.executeQuery("SELECT id, card_id, name, amount, frequency, checked, "
+                    + "last_checked_date FROM redemption ORDER BY card_id, position")) {
+                while (rows.next()) {
+                    Date lastChecked = rows.getDate(7);
+                    String frequency = rows.getString(5);
+                    Redemption redemption = new Redemption(rows.getString(1), rows.getString(3), rows.getDouble(4),
+                            frequency == null ? null : Redemption.Frequency.valueOf(frequency), rows.getBoolean(6),
+                            lastChecked == null ? null : lastChecked.toLocalDate(), new PeriodSet());
+                    CreditCard card = cards.get(rows.getString(2));
+                    if (card != null) {
+                        card.getRedemptions().add(redemption);
+                        redemptions.put(redemption.getId(), redemption);
+                    }
+                }
+            }
+            try (ResultSet rows = statement.executeQuery("SELECT redemption_id, period FROM completed_period")) {
+                while (rows.next()) {
+                    Redemption redemption = redemptions.get(rows.getString(1));
+                    if (redemption != null) {
+                        redemption.getCompletedPeriodsThisYear().add(PeriodSet.parse(rows.getString(2)));
+                    }
+                }
+            }
+            try (ResultSet rows = statement.executeQuery("SELECT card_id, summary_year, total FROM yearly_summary")) {
+                while (rows.next()) {
+                    CreditCard card = cards.get(rows.getString(1));
+                    if (card != null) {
+                        card.getYearlyReimbursementSummaries().put(rows.getInt(2), rows.getDouble(3));
+                    }
+                }
+            }
+            return new ArrayList<>(cards.values());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the credit card database", e);
+        }
+    }
+
+    /**
+     * Applies all changes in one transaction. The snapshot is never needed.
+     */
+    @Override
+    public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (ChangeRecord change : changes) {
+                    apply(connection, change);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not write to the credit card database", e);
+        }
+    }
+
+    private void apply(Connection connection, ChangeRecord change) throws SQLException {
+        switch (change.getType()) {
+            case PUT_CARD -> putCard(connection, change.getCard());
+            case DELETE_CARD -> update(connection, "DELETE FROM credit_card WHERE id = ?", change.getCardId());
+            case PUT_REDEMPTION -> putRedemption(connection, change.getCardId(), change.getRedemption(), -1);
+            case DELETE_REDEMPTION -> update(connection, "DELETE FROM redemption WHERE id = ? AND card_id = ?",
+                    change.getRedemptionId(), change.getCardId());
+        }
+    }
+
+    private void putCard(Connection connection, CreditCard card) throws SQLException {
+        update(connection, "MERGE INTO credit_card (id, name, description) KEY (id) VALUES (?, ?, ?)",
+                card.getId(), card.getName(), card.getDescription());
+
+        List<Redemption> redemptions = card.getRedemptions() == null ? List.of() : card.getRedemptions();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id FROM redemption WHERE card_id = ?")) {
+            statement.setString(1, card.getId());
+            List<String> stale = new ArrayList<>();
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    stale.add(rows.getString(1));
+                }
+            }
+            redemptions.forEach(redemption -> stale.remove(redemption.getId()));
+            for (String redemptionId : stale) {
+                update(connection, "DELETE FROM redemption WHERE id = ?", redemptionId);
+            }
+        }
+        for (int position = 0; position < redemptions.size(); position++) {
+            putRedemption(connection, card.getId(), redemptions.get(position), position);
+        }
+
+        update(connection, "DELETE FROM yearly_summary WHERE card_id = ?", card.getId());
+        if (card.getYearlyReimbursementSummaries() != null) {
+            for (Map.Entry<Integer, Double> summary : card.getYearlyReimbursementSummaries().entrySet()) {
+                update(connection, "INSERT INTO yearly_summary (card_id, summary_year, total) VALUES (?, ?, ?)",
+                        card.getId(), summary.getKey(), summary.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param position Position within the card, or -1 to keep the stored position (appending new redemptions).
+     */
+    private void putRedemption(Connection connection, String cardId, Redemption redemption, int position)
+            throws SQLException {
+        String sql = position >= 0
+                ? "MERGE INTO redemption (id, card_id, position, name, amount, frequency, checked, last_checked_date) "
+                  + "KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)"
+                : "MERGE INTO redemption (id, card_id, position, name, amount, frequency, checked, last_checked_date) "
+                  + "KEY (id) VALUES (?, ?, COALESCE((SELECT position FROM redemption WHERE id = ?), "
+                  + "(SELECT COALESCE(MAX(position) + 1, 0) FROM redemption WHERE card_id = ?)), ?, ?, ?, ?, ?)";
+        Object frequency = redemption.getFrequency() == null ? null : redemption.getFrequency().name();
+        Object lastChecked = redemption.getLastCheckedDate() == null ? null : Date.valueOf(redemption.getLastCheckedDate());
+        if (position >= 0) {
+            update(connection, sql, redemption.getId(), cardId, position, redemption.getName(), redemption.getAmount(),
+                    frequency, redemption.isChecked(), lastChecked);
+        } else {
+            update(connection, sql, redemption.getId(), cardId, redemption.getId(), cardId, redemption.getName(),
+                    redemption.getAmount(), frequency, redemption.isChecked(), lastChecked);
+        }
+
+        update(connection, "DELETE FROM completed_period WHERE redemption_id = ?", redemption.getId());
+        if (redemption.getCompletedPeriodsThisYear() != null) {
+            for (String period : redemption.getCompletedPeriodsThisYear().keys()) {
+                update(connection, "INSERT INTO completed_period (redemption_id, period) VALUES (?, ?)",
+                        redemption.getId(), period);
+            }
+        }
+    }
+
+    private static void update(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i] == null) {
+                    statement.setNull(i + 1, Types.NULL);
+                } else {
+                    statement.setObject(i + 1, parameters[i]);
+                }
+            }
+            statement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.util.ChangeRecord;
+import com.example.demo.util.JsonDataManager;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Stores the portfolio in the JSON data file through {@link JsonDataManager}.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.data.store", havingValue = "json", matchIfMissing = true)
+public class JsonCreditCardRepository implements CreditCardRepository {
+
+    private final JsonDataManager dataManager;
+
+    public JsonCreditCardRepository(JsonDataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    @Override
+    public List<CreditCard> loadAll() {
+        return dataManager.loadData();
+    }
+
+    @Override
+    public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+        dataManager.recordChanges(changes, snapshot);
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        return dataManager.sizeOnDisk();
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.util.ChangeRecord;
+import com.example.demo.util.JsonDataManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * One-shot import of an existing JSON data file into a freshly created database.
+ * It only runs while the database has no cards, so it never overwrites data written through the database.
+ */
+public class JsonToJdbcMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(JsonToJdbcMigrator.class);
+
+    private final JsonDataManager source;
+    private final JdbcCreditCardRepository target;
+
+    public JsonToJdbcMigrator(JsonDataManager source, JdbcCreditCardRepository target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * @return The number of cards imported.
+     */
+    public int migrateIfEmpty() {
+        if (!target.isEmpty()) {
+            return 0;
+        }
+        List<CreditCard> cards = source.loadData();
+        if (cards.isEmpty()) {
+            return 0;
+        }
+        target.persist(cards.stream().map(ChangeRecord::putCard).toList(), () -> cards);
+        log.info("Migrated {} credit cards from JSON into the database", cards.size());
+        return cards.size();
+    }
+}
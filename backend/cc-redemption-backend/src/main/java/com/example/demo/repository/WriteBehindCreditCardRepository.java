@@ -0,0 +1,263 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.util.ChangeRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Queues changes in memory and writes them to the wrapped repository on a background thread, so mutations no longer
+ * wait for the disk. A burst of changes is coalesced into one write: the queue is flushed once no change has arrived
+ * for {@code windowMs}, but never later than {@code maxStalenessMs} after the oldest queued change.
+ * <p>
+ * Queued changes are lost if the process dies before they are flushed. Callers that need a change to be on disk
+ * before they answer call {@link #flush()}, which writes everything queued so far on the calling thread.
+ * <p>
+ * A batch that fails to write stays at the head of the queue and is retried, ahead of the changes queued after it,
+ * with the delay doubling up to {@code MAX_RETRY_DELAY}. Acknowledged changes are never dropped: until the batch is
+ * written, {@link #stats()} and the {@code creditcards.storage.failing} gauge report the failure and every
+ * {@link #flush()} throws.
+ */
+public class WriteBehindCreditCardRepository implements CreditCardRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindCreditCardRepository.class);
+
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * @param queueDepth Changes waiting to be written.
+     * @param consecutiveFailures Failed attempts at the batch at the head of the queue; 0 while writes succeed.
+     * @param lastError The error of the last failed attempt, or null once a write has succeeded since.
+     */
+    public record Stats(int queueDepth, long flushes, long changesWritten, double lastFlushMillis,
+                        double maxFlushMillis, double averageFlushMillis, long failedFlushes, int consecutiveFailures,
+                        String lastError) {
+    }
+
+    private final CreditCardRepository delegate;
+    private final long windowNanos;
+    private final long maxStalenessNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private List<ChangeRecord> pending = new ArrayList<>();
+    private Supplier<List<CreditCard>> latestSnapshot;
+    private long oldestPendingNanos;
+    private long newestPendingNanos;
+    private List<ChangeRecord> failed; // A batch that failed to write, retried before anything queued after it
+    private volatile int failedAttempts;
+    private long retryDueNanos;
+    private boolean running = true;
+
+    // Serializes writes to the delegate, so batches reach it in the order they were queued
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private long flushes;
+    private long changesWritten;
+    private long lastFlushNanos;
+    private long maxFlushNanos;
+    private long totalFlushNanos;
+    private long failedFlushes;
+    private String lastError;
+    private volatile int queueDepth;
+    private final Timer flushTimer;
+    private final Counter flushFailures;
+
+    private final Thread flusher;
+
+    public WriteBehindCreditCardRepository(CreditCardRepository delegate, long windowMs, long maxStalenessMs,
+                                           MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.flushTimer = Timer.builder("creditcards.storage.flush")
+                .description("Time to write one coalesced batch of queued changes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("creditcards.storage.flush.failures")
+                .description("Failed attempts to write a batch of queued changes")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.storage.failing", this, repository -> repository.failedAttempts)
+                .description("Consecutive failed attempts at the oldest unwritten batch; 0 while writes succeed")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.storage.queue", this, repository -> repository.queueDepth)
+                .description("Changes waiting to be written")
+                .register(meterRegistry);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(windowMs, maxStalenessMs));
+        this.flusher = new Thread(this::runFlusher, "write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public List<CreditCard> loadAll() {
+        return delegate.loadAll();
+    }
+
+    @Override
+    public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (pending.isEmpty()) {
+                oldestPendingNanos = now;
+            }
+            newestPendingNanos = now;
+            pending.addAll(changes);
+            updateQueueDepth();
+            latestSnapshot = snapshot;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes every queued change before returning.
+     * @throws RuntimeException from the wrapped repository if the write fails; the changes stay queued.
+     */
+    @Override
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (true) {
+                List<ChangeRecord> batch;
+                Supplier<List<CreditCard>> snapshot;
+                lock.lock();
+                try {
+                    if (failed != null) {
+                        batch = failed;
+                    } else if (!pending.isEmpty()) {
+                        batch = pending;
+                        pending = new ArrayList<>();
+                    } else {
+                        return;
+                    }
+                    failed = batch;
+                    snapshot = latestSnapshot;
+                } finally {
+                    lock.unlock();
+                }
+                long start = System.nanoTime();
+                try {
+                    delegate.persist(batch, snapshot);
+                } catch (RuntimeException e) {
+                    retryLater(e);
+                    throw e;
+                }
+                long elapsed = System.nanoTime() - start;
+                lock.lock();
+                try {
+                    failed = null;
+                    failedAttempts = 0;
+                    updateQueueDepth();
+                } finally {
+                    lock.unlock();
+                }
+                lastError = null;
+                flushTimer.record(elapsed, TimeUnit.NANOSECONDS);
+                flushes++;
+                changesWritten += batch.size();
+                lastFlushNanos = elapsed;
+                maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+                totalFlushNanos += elapsed;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        flushLock.lock();
+        try {
+            return new Stats(queueDepth, flushes, changesWritten, lastFlushNanos / 1e6, maxFlushNanos / 1e6,
+                    flushes == 0 ? 0.0 : totalFlushNanos / 1e6 / flushes, failedFlushes, failedAttempts, lastError);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the background thread and writes whatever is still queued.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Schedules another attempt at the batch that failed to write, backing off further with each failure. Must be
+     * called holding the flush lock.
+     */
+    private void retryLater(RuntimeException failure) {
+        failedFlushes++;
+        lastError = String.valueOf(failure.getMessage());
+        flushFailures.increment();
+        lock.lock();
+        try {
+            int attempts = failedAttempts + 1;
+            long delay = Math.max(windowNanos, TimeUnit.MILLISECONDS.toNanos(1)) << Math.min(attempts, 16);
+            retryDueNanos = System.nanoTime() + Math.min(delay, MAX_RETRY_DELAY_NANOS);
+            failedAttempts = attempts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateQueueDepth() {
+        queueDepth = pending.size() + (failed == null ? 0 : failed.size());
+    }
+
+    private void runFlusher() {
+        lock.lock();
+        try {
+            while (running) {
+                if (pending.isEmpty() && failed == null) {
+                    changed.awaitUninterruptibly();
+                    continue;
+                }
+                long due = failed != null
+                        ? retryDueNanos
+                        : Math.min(newestPendingNanos + windowNanos, oldestPendingNanos + maxStalenessNanos);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    changed.awaitNanos(wait);
+                    continue;
+                }
+                lock.unlock();
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    log.error("Write-behind flush failed {} times in a row; {} changes stay queued and will be retried",
+                            failedAttempts, queueDepth, e);
+                } finally {
+                    lock.lock();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
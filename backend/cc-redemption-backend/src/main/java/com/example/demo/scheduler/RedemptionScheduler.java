@@ -1,21 +1,151 @@
 package com.example.demo.scheduler;
 
 import com.example.demo.service.CreditCardService;
-import org.springframework.scheduling.annotation.Scheduled;
+import com.example.demo.service.ReimbursementTotals;
+import com.example.demo.service.TenantPartitions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Runs the redemption reset only on the days a period actually ends for something that is checked, instead of
+ * every night. After each run (and whenever a check-off brings the next boundary forward) a single one-shot task
+ * is armed for midnight of the next due date.
+ * <p>
+ * The first run starts as soon as the scheduler does, catching up on every boundary that passed while the app was
+ * down without holding up startup.
+ * <p>
+ * Every resident tenant partition gets its own one-shot task from when it is loaded until it is evicted. Partitions
+ * catch up while loading, so a tenant that was not resident at a boundary is reset on its next request.
+ */
 @Component
 public class RedemptionScheduler {
 
+    private static final Logger log = LoggerFactory.getLogger(RedemptionScheduler.class);
+
     private final CreditCardService creditCardService;
+    private final TaskScheduler taskScheduler;
+    private final TenantPartitions tenantPartitions;
+    private final Map<CreditCardService, Schedule> schedules = new ConcurrentHashMap<>();
 
-    public RedemptionScheduler(CreditCardService creditCardService) {
+    public RedemptionScheduler(CreditCardService creditCardService, TaskScheduler taskScheduler,
+                               TenantPartitions tenantPartitions) {
         this.creditCardService = creditCardService;
+        this.taskScheduler = taskScheduler;
+        this.tenantPartitions = tenantPartitions;
+    }
+
+    @PostConstruct
+    public void start() {
+        Schedule schedule = new Schedule(creditCardService, null);
+        schedules.put(creditCardService, schedule);
+        creditCardService.onNextRolloverDateChanged(schedule::rearm);
+        taskScheduler.schedule(schedule::resetRedemptionsWhenDue, Instant.now()); // Rearms once caught up
+        tenantPartitions.addListener(new TenantPartitions.Listener() {
+            @Override
+            public void loaded(String tenant, CreditCardService partition) {
+                Schedule tenantSchedule = new Schedule(partition, tenant);
+                schedules.put(partition, tenantSchedule);
+                partition.onNextRolloverDateChanged(tenantSchedule::rearm);
+                tenantSchedule.rearm();
+            }
+
+            @Override
+            public void evicted(String tenant, CreditCardService partition) {
+                Schedule tenantSchedule = schedules.remove(partition);
+                if (tenantSchedule != null) {
+                    tenantSchedule.stop();
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        schedules.values().forEach(Schedule::stop);
     }
 
-    @Scheduled(cron = "0 0 0 * * *") // Run every day at midnight
-    public void resetRedemptionsDaily() {
-        creditCardService.resetRedemptions();
-        System.out.println("Redemptions reset nightly.");
+    public void resetRedemptionsWhenDue() {
+        schedules.get(creditCardService).resetRedemptionsWhenDue();
+    }
+
+    /**
+     * The next run of one service.
+     */
+    private final class Schedule {
+        private final CreditCardService service;
+        private final String tenant; // Null for the default portfolio
+        private ScheduledFuture<?> nextRun;
+        private LocalDate nextRunDate;
+        private boolean stopped;
+
+        private Schedule(CreditCardService service, String tenant) {
+            this.service = service;
+            this.tenant = tenant;
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+            if (nextRun != null) {
+                nextRun.cancel(false);
+            }
+        }
+
+        private void resetRedemptionsWhenDue() {
+            synchronized (this) {
+                nextRun = null;
+                nextRunDate = null;
+            }
+            // A tenant's partition is held while it resets, and left alone if it has been evicted meanwhile
+            if (tenant != null && !tenantPartitions.acquireIfResident(tenant, service)) {
+                return;
+            }
+            try {
+                service.resetRedemptions();
+                ReimbursementTotals.ConsistencyReport report = service.verifyReimbursementTotals();
+                if (!report.isConsistent()) {
+                    log.warn("Reimbursement totals{} had drifted on {} cards and were recomputed (running {}, "
+                                    + "actual {})", tenant == null ? "" : " of tenant " + tenant,
+                            report.mismatchedCardIds().size(), report.runningTotal(), report.recomputedTotal());
+                }
+            } finally {
+                tenantPartitions.release(tenant);
+            }
+            rearm();
+        }
+
+        /**
+         * Arms the next run for the service's next rollover date, replacing a later one if already armed.
+         */
+        private synchronized void rearm() {
+            LocalDate due = service.getNextRolloverDate();
+            if (stopped || due == null || due.equals(nextRunDate)) {
+                return;
+            }
+            if (nextRun != null) {
+                if (!due.isBefore(nextRunDate)) {
+                    return;
+                }
+                nextRun.cancel(false);
+            }
+            nextRunDate = due;
+            if (tenant == null) {
+                log.info("Next redemption reset scheduled for {}", due);
+            } else {
+                log.debug("Next redemption reset for tenant {} scheduled for {}", tenant, due);
+            }
+            nextRun = taskScheduler.schedule(this::resetRedemptionsWhenDue,
+                    due.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        }
     }
 }
@@ -0,0 +1,47 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.Redemption;
+
+import java.util.function.Predicate;
+
+/**
+ * Server-side filters for the paginated card listing. Null criteria match everything.
+ * @param namePrefix Case-insensitive prefix of the card name.
+ * @param frequency Cards with at least one redemption of this frequency.
+ * @param checked Cards with at least one redemption in this checked state.
+ * @param minOutstanding Cards whose unchecked redemptions are worth at least this much.
+ */
+public record CardFilter(String namePrefix, Redemption.Frequency frequency, Boolean checked, Double minOutstanding)
+        implements Predicate<CreditCard> {
+
+    public static final CardFilter NONE = new CardFilter(null, null, null, null);
+
+    @Override
+    public boolean test(CreditCard card) {
+        if (namePrefix != null && !namePrefix.isEmpty() && (card.getName() == null
+                || !card.getName().regionMatches(true, 0, namePrefix, 0, namePrefix.length()))) {
+            return false;
+        }
+        if (frequency != null && card.getRedemptions().stream().noneMatch(red -> red.getFrequency() == frequency)) {
+            return false;
+        }
+        if (checked != null && card.getRedemptions().stream().noneMatch(red -> red.isChecked() == checked)) {
+            return false;
+        }
+        return minOutstanding == null || outstandingValue(card) >= minOutstanding;
+    }
+
+    /**
+     * The value of the card's redemptions that are not checked off yet.
+     */
+    public static double outstandingValue(CreditCard card) {
+        double outstanding = 0.0;
+        for (Redemption redemption : card.getRedemptions()) {
+            if (!redemption.isChecked()) {
+                outstanding += redemption.getAmount();
+            }
+        }
+        return outstanding;
+    }
+}
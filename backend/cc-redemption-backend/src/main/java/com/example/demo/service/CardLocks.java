@@ -0,0 +1,71 @@
+package com.example.demo.service;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Striped per-card locks. Every mutation of a card (and of the redemptions on it) runs under the stripe for that
+ * card's id, so operations on different cards proceed in parallel and there is no global lock.
+ */
+public class CardLocks {
+
+    private final ReentrantLock[] stripes;
+
+    public CardLocks(int minimumStripes) {
+        int size = Integer.highestOneBit(Math.max(1, minimumStripes - 1)) << 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public CardLocks() {
+        this(Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    public <T> T withCardLock(String cardId, Supplier<T> action) {
+        ReentrantLock lock = stripeFor(cardId);
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the action while holding the locks of all the given cards. Stripes are always taken in ascending
+     * order, so concurrent multi-card operations cannot deadlock.
+     */
+    public <T> T withCardLocks(Collection<String> cardIds, Supplier<T> action) {
+        TreeSet<Integer> stripeIndexes = new TreeSet<>();
+        cardIds.forEach(cardId -> stripeIndexes.add(stripeIndex(cardId)));
+        int locked = 0;
+        try {
+            for (int stripeIndex : stripeIndexes) {
+                stripes[stripeIndex].lock();
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int stripeIndex : stripeIndexes) {
+                if (locked-- == 0) {
+                    break;
+                }
+                stripes[stripeIndex].unlock();
+            }
+        }
+    }
+
+    private ReentrantLock stripeFor(String cardId) {
+        return stripes[stripeIndex(cardId)];
+    }
+
+    private int stripeIndex(String cardId) {
+        int hash = cardId.hashCode();
+        hash ^= (hash >>> 16);
+        return hash & (stripes.length - 1);
+    }
+}
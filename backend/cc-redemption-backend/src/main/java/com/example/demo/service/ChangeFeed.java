@@ -0,0 +1,146 @@
+package com.example.demo.service;
+
+import com.example.demo.util.ChangeRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The sequence of changes applied by {@link CreditCardService}, numbered by dataset version. The most recent
+ * {@code capacity} events are kept, so a subscriber that reconnects can resume where it left off.
+ * <p>
+ * Events are encoded to JSON when they are published, right after their changes were applied, so an event shows
+ * that state even if the card changes again before it is delivered. A change set larger
+ * than {@value #MAX_EVENT_CHANGES} records (e.g. a year rollover) is published as a {@link #RESYNC} event without
+ * data instead: receivers re-fetch the cards rather than apply a huge delta.
+ */
+public class ChangeFeed {
+
+    public static final String CHANGE = "change";
+    public static final String RESYNC = "resync";
+    static final int MAX_EVENT_CHANGES = 1000;
+
+    /**
+     * @param name {@link #CHANGE} or {@link #RESYNC}.
+     * @param data For {@link #CHANGE}, the changes as a JSON array of {@link ChangeRecord}s; empty for {@link #RESYNC}.
+     */
+    public record Event(long sequence, String name, String data) {
+    }
+
+    // Shared by every feed; one per tenant partition would cost more than a small partition's data
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS); // Same date format as the REST responses
+
+    // Sequences restart at 0 with each feed, so tags carry its creation time to stay unique across restarts
+    private final String instanceId = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Event> history;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile long lastSequence;
+
+    public ChangeFeed(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.history = new ArrayDeque<>(Math.min(this.capacity, 16)); // Grows only for feeds that are written to
+    }
+
+    /**
+     * Assigns the changes the next sequence number and notifies the listeners.
+     * @return The new sequence number.
+     */
+    public long publish(List<ChangeRecord> changes) {
+        String name = changes.size() > MAX_EVENT_CHANGES ? RESYNC : CHANGE;
+        String data = "";
+        if (name.equals(CHANGE)) {
+            try {
+                data = objectMapper.writeValueAsString(changes);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not encode change event", e);
+            }
+        }
+        long sequence;
+        lock.lock();
+        try {
+            sequence = lastSequence + 1;
+            if (history.size() == capacity) {
+                history.removeFirst();
+            }
+            history.addLast(new Event(sequence, name, data));
+            lastSequence = sequence;
+        } finally {
+            lock.unlock();
+        }
+        listeners.forEach(Runnable::run);
+        return sequence;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return Every event after {@code sequence} in order, or empty if some of them are no longer kept.
+     */
+    public Optional<List<Event>> eventsAfter(long sequence) {
+        lock.lock();
+        try {
+            if (sequence >= lastSequence) {
+                return Optional.of(List.of());
+            }
+            Event oldest = history.peekFirst();
+            if (oldest == null || oldest.sequence() > sequence + 1) {
+                return Optional.empty();
+            }
+            List<Event> events = new ArrayList<>((int) (lastSequence - sequence));
+            for (Event event : history) {
+                if (event.sequence() > sequence) {
+                    events.add(event);
+                }
+            }
+            return Optional.of(events);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called on the publishing thread after every event; listeners must return quickly.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return A tag for the sequence number that is unique across restarts, e.g. for ETags and SSE event ids.
+     */
+    public String tag(long sequence) {
+        return instanceId + "-" + sequence;
+    }
+
+    /**
+     * @return The sequence number of a tag produced by {@link #tag(long)} in this process, or empty if the tag is
+     * malformed or from an earlier run.
+     */
+    public OptionalLong parseTag(String tag) {
+        String prefix = instanceId + "-";
+        if (tag == null || !tag.startsWith(prefix)) {
+            return OptionalLong.empty();
+        }
+        try {
+            long sequence = Long.parseLong(tag.substring(prefix.length()));
+            return sequence >= 0 && sequence <= lastSequence ? OptionalLong.of(sequence) : OptionalLong.empty();
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package com.example.demo.service;
+
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import com.example.demo.util.HistoryLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Every period completion ever recorded, kept across year rollovers (which only clear the redemptions' own period
+ * sets). Completions are stored column by column in primitive arrays, with card and redemption ids
+ * dictionary-encoded, and are appended to a {@link HistoryLog} so they survive restarts.
+ * <p>
+ * Captured value is also summed into rollups by month, by card and year, and by frequency and year as each
+ * completion arrives, so the aggregate queries never walk the completions. Available credits are computed from the
+ * redemptions (how long each one existed), which grow with the portfolio rather than with history. An unchecked
+ * completion is subtracted from the month it was captured in.
+ * <p>
+ * All methods are thread-safe. A failed append is logged and the in-memory history is kept.
+ */
+public class CompletionHistory {
+
+    private static final Logger log = LoggerFactory.getLogger(CompletionHistory.class);
+
+    private static final Redemption.Frequency[] FREQUENCIES = Redemption.Frequency.values();
+    private static final int ACTIVE = Integer.MAX_VALUE;
+    private static final int MAX_MONTHS = 1200;
+
+    public record MonthlyCapture(String month, double captured) {
+    }
+
+    /**
+     * @param name The card's current name, or null if it has been deleted.
+     */
+    public record CardCapture(String cardId, String name, double captured) {
+    }
+
+    /**
+     * @param available The value of every period that was open while its redemption existed, up to today.
+     * @param captureRate captured / available, or 0 if nothing was available.
+     */
+    public record Capture(Integer year, Redemption.Frequency frequency, double captured, double available,
+                          double captureRate) {
+    }
+
+    /**
+     * @param amount Negative for an uncheck that undid an earlier completion.
+     */
+    public record Completion(String redemptionId, Redemption.Frequency frequency, String period, LocalDate date,
+                             double amount) {
+    }
+
+    private final HistoryLog historyLog;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Dictionaries
+    private final List<String> cardIds = new ArrayList<>();
+    private final Map<String, Integer> cardIndex = new HashMap<>();
+    private final List<String> redemptionIds = new ArrayList<>();
+    private final Map<String, Integer> redemptionIndex = new HashMap<>();
+
+    // Redemption columns
+    private int redemptionCount;
+    private int[] redemptionCard = new int[64];
+    private byte[] redemptionFrequency = new byte[64];
+    private double[] redemptionAmount = new double[64];
+    private int[] activeFrom = new int[64];
+    private int[] activeUntil = new int[64];
+
+    // Completion columns
+    private int eventCount;
+    private int[] eventRedemption = new int[64];
+    private int[] eventCard = new int[64];
+    private int[] eventPeriod = new int[64];
+    private int[] eventDay = new int[64];
+    private byte[] eventFrequency = new byte[64];
+    private double[] eventAmount = new double[64];
+
+    // Rollups
+    private final Map<Integer, Double> capturedByMonth = new HashMap<>(); // year * 12 + month - 1
+    private double[] capturedByCard = new double[64];
+    private final Map<Long, Double> capturedByCardYear = new HashMap<>(); // card << 32 | year
+    private final Map<Integer, double[]> capturedByYearFrequency = new HashMap<>();
+    // Day each currently completed period was captured on, so an uncheck comes off the right month
+    private final CompletionDays completionDays = new CompletionDays();
+
+    /**
+     * @param historyLog Where completions are persisted and replayed from, or null to keep them in memory only.
+     */
+    public CompletionHistory(HistoryLog historyLog) {
+        this.historyLog = historyLog;
+        if (historyLog != null) {
+            try {
+                historyLog.replay(new Replay());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the completion history", e);
+            }
+        }
+    }
+
+    /**
+     * Starts tracking a redemption from {@code day}, or records a change to its frequency or amount.
+     * @return True if the redemption was not tracked before.
+     */
+    public boolean track(String cardId, Redemption redemption, LocalDate day) {
+        lock.lock();
+        try {
+            Integer index = redemptionIndex.get(redemption.getId());
+            byte frequency = frequencyCode(redemption.getFrequency());
+            if (index != null && redemptionFrequency[index] == frequency
+                    && redemptionAmount[index] == redemption.getAmount() && activeUntil[index] == ACTIVE) {
+                return false;
+            }
+            int card = cardIndex(cardId);
+            int target = index == null ? redemptionCount : index;
+            int from = index == null ? (int) day.toEpochDay() : activeFrom[index];
+            applyRedemption(target, redemption.getId(), card, frequency, redemption.getAmount(), from);
+            if (historyLog != null) {
+                try {
+                    historyLog.appendRedemption(target, redemption.getId(), card, frequency, redemption.getAmount(),
+                            from);
+                } catch (IOException e) {
+                    log.error("Could not append redemption {} to the completion history", redemption.getId(), e);
+                }
+            }
+            return index == null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void untrack(String redemptionId, LocalDate day) {
+        lock.lock();
+        try {
+            Integer index = redemptionIndex.get(redemptionId);
+            if (index == null || activeUntil[index] != ACTIVE) {
+                return;
+            }
+            applyRemoved(index, (int) day.toEpochDay());
+            if (historyLog != null) {
+                try {
+                    historyLog.appendRemoved(index, (int) day.toEpochDay());
+                } catch (IOException e) {
+                    log.error("Could not append the removal of {} to the completion history", redemptionId, e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that the redemption's period was completed on {@code day}.
+     */
+    public void completed(String cardId, Redemption redemption, int period, LocalDate day) {
+        lock.lock();
+        try {
+            append(cardId, redemption, period, day, redemption.getAmount());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that a completion of the period was undone on {@code day}.
+     */
+    public void revoked(String cardId, Redemption redemption, int period, LocalDate day) {
+        lock.lock();
+        try {
+            append(cardId, redemption, period, day, -redemption.getAmount());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return eventCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Value captured in each month from {@code from} to {@code to}, including months without completions.
+     */
+    public List<MonthlyCapture> capturedByMonth(YearMonth from, YearMonth to) {
+        lock.lock();
+        try {
+            int first = monthIndex(from.getYear(), from.getMonthValue());
+            int last = Math.min(monthIndex(to.getYear(), to.getMonthValue()), first + MAX_MONTHS - 1);
+            List<MonthlyCapture> months = new ArrayList<>(Math.max(0, last - first + 1));
+            for (int month = first; month <= last; month++) {
+                months.add(new MonthlyCapture(YearMonth.of(month / 12, month % 12 + 1).toString(),
+                        capturedByMonth.getOrDefault(month, 0.0)));
+            }
+            return months;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Value captured per card, highest first.
+     * @param year The year to report, or null for all years.
+     * @param names Current card names by id.
+     */
+    public List<CardCapture> capturedByCard(Integer year, Function<String, String> names) {
+        lock.lock();
+        try {
+            List<CardCapture> cards = new ArrayList<>();
+            for (int card = 0; card < cardIds.size(); card++) {
+                double captured = year == null
+                        ? capturedByCard[card]
+                        : capturedByCardYear.getOrDefault((long) card << 32 | year, 0.0);
+                if (captured != 0.0) {
+                    cards.add(new CardCapture(cardIds.get(card), names.apply(cardIds.get(card)), captured));
+                }
+            }
+            cards.sort(Comparator.comparingDouble(CardCapture::captured).reversed());
+            return cards;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Captured and available value for each frequency in {@code year}; periods after {@code today} are not counted.
+     */
+    public List<Capture> captureByFrequency(int year, LocalDate today) {
+        lock.lock();
+        try {
+            double[] captured = capturedByYearFrequency.getOrDefault(year, new double[FREQUENCIES.length]);
+            double[] available = available(year, today);
+            List<Capture> captures = new ArrayList<>(FREQUENCIES.length);
+            for (int frequency = 0; frequency < FREQUENCIES.length; frequency++) {
+                captures.add(capture(year, FREQUENCIES[frequency], captured[frequency], available[frequency]));
+            }
+            return captures;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Captured and available value of each year from {@code fromYear} to {@code toYear}.
+     */
+    public List<Capture> captureByYear(int fromYear, int toYear, LocalDate today) {
+        lock.lock();
+        try {
+            List<Capture> years = new ArrayList<>();
+            for (int year = fromYear; year <= toYear && year - fromYear < MAX_MONTHS / 12; year++) {
+                double captured = Arrays.stream(capturedByYearFrequency.getOrDefault(year, new double[0])).sum();
+                double available = Arrays.stream(available(year, today)).sum();
+                years.add(capture(year, null, captured, available));
+            }
+            return years;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Every completion and uncheck recorded for the card, oldest first.
+     */
+    public List<Completion> completions(String cardId) {
+        lock.lock();
+        try {
+            Integer card = cardIndex.get(cardId);
+            List<Completion> completions = new ArrayList<>();
+            if (card == null) {
+                return completions;
+            }
+            for (int event = 0; event < eventCount; event++) {
+                if (eventCard[event] == card) {
+                    completions.add(new Completion(redemptionIds.get(eventRedemption[event]),
+                            frequency(eventFrequency[event]), PeriodSet.key(eventPeriod[event]),
+                            LocalDate.ofEpochDay(eventDay[event]), eventAmount[event]));
+                }
+            }
+            return completions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets the capture days of periods in {@code year} or earlier. Called once a year has been rolled over, as
+     * its periods have left the redemptions' period sets and can no longer be unchecked.
+     */
+    public void closeYearsThrough(int year) {
+        lock.lock();
+        try {
+            completionDays.removeYearsThrough(year);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        if (historyLog != null) {
+            try {
+                historyLog.close();
+            } catch (IOException e) {
+                log.error("Could not close the completion history", e);
+            }
+        }
+    }
+
+    private void append(String cardId, Redemption redemption, int period, LocalDate day, double amount) {
+        track(cardId, redemption, day);
+        int index = redemptionIndex.get(redemption.getId());
+        byte frequency = frequencyCode(redemption.getFrequency());
+        applyEvent(index, period, (int) day.toEpochDay(), frequency, amount);
+        if (historyLog != null) {
+            try {
+                historyLog.appendEvent(index, period, (int) day.toEpochDay(), frequency, amount);
+            } catch (IOException e) {
+                log.error("Could not append a completion of {} to the completion history", redemption.getId(), e);
+            }
+        }
+    }
+
+    private int cardIndex(String cardId) {
+        Integer index = cardIndex.get(cardId);
+        if (index != null) {
+            return index;
+        }
+        applyCard(cardId);
+        if (historyLog != null) {
+            try {
+                historyLog.appendCard(cardId);
+            } catch (IOException e) {
+                log.error("Could not append card {} to the completion history", cardId, e);
+            }
+        }
+        return cardIds.size() - 1;
+    }
+
+    private void applyCard(String cardId) {
+        cardIndex.put(cardId, cardIds.size());
+        cardIds.add(cardId);
+        if (cardIds.size() > capturedByCard.length) {
+            capturedByCard = Arrays.copyOf(capturedByCard, capturedByCard.length * 2);
+        }
+    }
+
+    private void applyRedemption(int index, String redemptionId, int card, byte frequency, double amount, int from) {
+        if (index == redemptionCount) {
+            if (redemptionCount == redemptionCard.length) {
+                int capacity = redemptionCount * 2;
+                redemptionCard = Arrays.copyOf(redemptionCard, capacity);
+                redemptionFrequency = Arrays.copyOf(redemptionFrequency, capacity);
+                redemptionAmount = Arrays.copyOf(redemptionAmount, capacity);
+                activeFrom = Arrays.copyOf(activeFrom, capacity);
+                activeUntil = Arrays.copyOf(activeUntil, capacity);
+            }
+            redemptionIndex.put(redemptionId, index);
+            redemptionIds.add(redemptionId);
+            redemptionCount++;
+        }
+        redemptionCard[index] = card;
+        redemptionFrequency[index] = frequency;
+        redemptionAmount[index] = amount;
+        activeFrom[index] = from;
+        activeUntil[index] = ACTIVE;
+    }
+
+    private void applyRemoved(int index, int day) {
+        activeUntil[index] = day;
+    }
+
+    private void applyEvent(int redemption, int period, int day, byte frequency, double amount) {
+        if (eventCount == eventDay.length) {
+            int capacity = eventCount * 2;
+            eventRedemption = Arrays.copyOf(eventRedemption, capacity);
+            eventCard = Arrays.copyOf(eventCard, capacity);
+            eventPeriod = Arrays.copyOf(eventPeriod, capacity);
+            eventDay = Arrays.copyOf(eventDay, capacity);
+            eventFrequency = Arrays.copyOf(eventFrequency, capacity);
+            eventAmount = Arrays.copyOf(eventAmount, capacity);
+        }
+        int card = redemptionCard[redemption];
+        eventRedemption[eventCount] = redemption;
+        eventCard[eventCount] = card;
+        eventPeriod[eventCount] = period;
+        eventDay[eventCount] = day;
+        eventFrequency[eventCount] = frequency;
+        eventAmount[eventCount] = amount;
+        eventCount++;
+
+        int capturedOn = day;
+        if (amount >= 0) {
+            completionDays.put(redemption, period, day);
+        } else {
+            int completedOn = completionDays.remove(redemption, period);
+            capturedOn = completedOn == CompletionDays.NONE ? day : completedOn;
+        }
+        LocalDate date = LocalDate.ofEpochDay(capturedOn);
+        capturedByMonth.merge(monthIndex(date.getYear(), date.getMonthValue()), amount, Double::sum);
+        capturedByCard[card] += amount;
+        capturedByCardYear.merge((long) card << 32 | date.getYear(), amount, Double::sum);
+        if (frequency >= 0) {
+            capturedByYearFrequency.computeIfAbsent(date.getYear(), year -> new double[FREQUENCIES.length])[frequency]
+                    += amount;
+        }
+    }
+
+    /**
+     * The value of every period of {@code year}, up to today, during which each redemption existed, by frequency.
+     */
+    private double[] available(int year, LocalDate today) {
+        double[] available = new double[FREQUENCIES.length];
+        int yearStart = (int) LocalDate.of(year, 1, 1).toEpochDay();
+        int yearEnd = (int) Math.min(LocalDate.of(year, 12, 31).toEpochDay(), today.toEpochDay());
+        for (int index = 0; index < redemptionCount; index++) {
+            int frequency = redemptionFrequency[index];
+            int start = Math.max(yearStart, activeFrom[index]);
+            int end = Math.min(yearEnd, activeUntil[index]);
+            if (frequency < 0 || start > end) {
+                continue;
+            }
+            long periods = periodNumber(FREQUENCIES[frequency], LocalDate.ofEpochDay(end))
+                    - periodNumber(FREQUENCIES[frequency], LocalDate.ofEpochDay(start)) + 1;
+            available[frequency] += redemptionAmount[index] * periods;
+        }
+        return available;
+    }
+
+    private static Capture capture(Integer year, Redemption.Frequency frequency, double captured, double available) {
+        return new Capture(year, frequency, captured, available, available == 0.0 ? 0.0 : captured / available);
+    }
+
+    /**
+     * Numbers the periods of a frequency consecutively across years.
+     */
+    private static long periodNumber(Redemption.Frequency frequency, LocalDate date) {
+        int month = date.getMonthValue() - 1;
+        return switch (frequency) {
+            case MONTHLY -> date.getYear() * 12L + month;
+            case QUARTERLY -> date.getYear() * 4L + month / 3;
+            case BIANNUAL -> date.getYear() * 2L + month / 6;
+            case YEARLY -> date.getYear();
+        };
+    }
+
+    private static int monthIndex(int year, int month) {
+        return year * 12 + month - 1;
+    }
+
+    private static byte frequencyCode(Redemption.Frequency frequency) {
+        return frequency == null ? -1 : (byte) frequency.ordinal();
+    }
+
+    private static Redemption.Frequency frequency(byte code) {
+        return code < 0 ? null : FREQUENCIES[code];
+    }
+
+    /**
+     * Open-addressing map from (redemption, period) to the day the period was completed, with the keys and days in
+     * primitive arrays rather than a boxed entry per completion.
+     */
+    private static final class CompletionDays {
+        static final int NONE = Integer.MIN_VALUE;
+        private static final long FREE = -1;
+
+        private long[] keys = newKeys(16);
+        private int[] days = new int[16];
+        private int size;
+
+        void put(int redemption, int period, int day) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            long key = key(redemption, period);
+            int slot = slot(key);
+            while (keys[slot] != FREE && keys[slot] != key) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            if (keys[slot] == FREE) {
+                keys[slot] = key;
+                size++;
+            }
+            days[slot] = day;
+        }
+
+        /**
+         * @return The day, or {@link #NONE} if the period was not completed.
+         */
+        int remove(int redemption, int period) {
+            long key = key(redemption, period);
+            int slot = slot(key);
+            while (keys[slot] != key) {
+                if (keys[slot] == FREE) {
+                    return NONE;
+                }
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            int day = days[slot];
+            keys[slot] = FREE;
+            size--;
+            // Moves later entries of the probe sequence back into the gap, so no lookup stops short at it
+            int gap = slot;
+            int mask = keys.length - 1;
+            for (int next = (gap + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+                if (((next - slot(keys[next])) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    days[gap] = days[next];
+                    keys[next] = FREE;
+                    gap = next;
+                }
+            }
+            return day;
+        }
+
+        void removeYearsThrough(int year) {
+            long[] oldKeys = keys;
+            int[] oldDays = days;
+            int kept = 0;
+            for (long key : oldKeys) {
+                if (key != FREE && PeriodSet.year((int) key) > year) {
+                    kept++;
+                }
+            }
+            keys = newKeys(capacityFor(kept));
+            days = new int[keys.length];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                long key = oldKeys[slot];
+                if (key != FREE && PeriodSet.year((int) key) > year) {
+                    put((int) (key >>> 32), (int) key, oldDays[slot]);
+                }
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldDays = days;
+            keys = newKeys(capacity);
+            days = new int[capacity];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != FREE) {
+                    put((int) (oldKeys[slot] >>> 32), (int) oldKeys[slot], oldDays[slot]);
+                }
+            }
+        }
+
+        private int slot(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (keys.length - 1);
+        }
+
+        private static long key(int redemption, int period) {
+            return (long) redemption << 32 | (period & 0xFFFFFFFFL);
+        }
+
+        private static int capacityFor(int entries) {
+            return Math.max(16, Integer.highestOneBit(Math.max(1, entries) * 2) << 1);
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, FREE);
+            return keys;
+        }
+    }
+
+    private class Replay implements HistoryLog.Visitor {
+        @Override
+        public void card(String cardId) {
+            applyCard(cardId);
+        }
+
+        @Override
+        public void redemption(int index, String redemptionId, int cardIndex, byte frequency, double amount,
+                               int fromDay) {
+            applyRedemption(index, redemptionId, cardIndex, frequency, amount, fromDay);
+        }
+
+        @Override
+        public void removed(int redemptionIndex, int day) {
+            applyRemoved(redemptionIndex, day);
+        }
+
+        @Override
+        public void event(int redemptionIndex, int period, int day, byte frequency, double amount) {
+            applyEvent(redemptionIndex, period, day, frequency, amount);
+        }
+    }
+}
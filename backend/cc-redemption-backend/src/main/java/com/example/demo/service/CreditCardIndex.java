@@ -0,0 +1,181 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.Redemption;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Id-keyed lookup tables over the cards held by {@link CreditCardService}, plus the cards themselves in insertion
+ * order. The service keeps the index in step with every add, update and delete, so lookups never scan the card list.
+ * All structures are concurrent; iteration is weakly consistent and never throws ConcurrentModificationException.
+ * <p>
+ * The index also records each card's version: the dataset version of the last change that touched it.
+ */
+public class CreditCardIndex {
+
+    private final Map<String, CardEntry> cardsById = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, CreditCard> cardsInOrder = new ConcurrentSkipListMap<>();
+    private final Map<String, RedemptionRef> redemptionsById = new ConcurrentHashMap<>();
+    private final Map<String, Long> versionsById = new ConcurrentHashMap<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private record CardEntry(long sequence, CreditCard card) {
+    }
+
+    /**
+     * A redemption together with the card that owns it.
+     */
+    public record RedemptionRef(CreditCard card, Redemption redemption) {
+    }
+
+    /**
+     * A page of cards in insertion order.
+     * @param nextSequence Position to continue after, or null if there are no further matches.
+     */
+    public record Page(List<CreditCard> cards, Long nextSequence) {
+    }
+
+    public void rebuild(Collection<CreditCard> cards) {
+        cardsById.clear();
+        cardsInOrder.clear();
+        redemptionsById.clear();
+        versionsById.clear();
+        cards.forEach(this::putCard);
+    }
+
+    /**
+     * Adds a card, or re-indexes it in place if it is already present.
+     */
+    public void putCard(CreditCard card) {
+        CardEntry entry = cardsById.compute(card.getId(), (id, existing) -> existing == null
+                ? new CardEntry(nextSequence.getAndIncrement(), card)
+                : new CardEntry(existing.sequence(), card));
+        cardsInOrder.put(entry.sequence(), card);
+        if (card.getRedemptions() != null) {
+            card.getRedemptions().forEach(redemption -> putRedemption(card, redemption));
+        }
+    }
+
+    public void removeCard(CreditCard card) {
+        CardEntry entry = cardsById.remove(card.getId());
+        if (entry != null) {
+            cardsInOrder.remove(entry.sequence());
+        }
+        versionsById.remove(card.getId());
+        removeRedemptionsOf(card);
+    }
+
+    /**
+     * Drops the index entries for every redemption currently on the card, e.g. before its list is replaced.
+     */
+    public void removeRedemptionsOf(CreditCard card) {
+        if (card.getRedemptions() != null) {
+            card.getRedemptions().forEach(redemption -> removeRedemption(redemption.getId()));
+        }
+    }
+
+    public void putRedemption(CreditCard card, Redemption redemption) {
+        if (redemption.getId() != null) {
+            redemptionsById.put(redemption.getId(), new RedemptionRef(card, redemption));
+        }
+    }
+
+    /**
+     * Indexes the redemption unless its id is already indexed, for another card or another redemption of this one.
+     * @return false if the id is taken; the index is unchanged.
+     */
+    public boolean putRedemptionIfAbsent(CreditCard card, Redemption redemption) {
+        return redemptionsById.putIfAbsent(redemption.getId(), new RedemptionRef(card, redemption)) == null;
+    }
+
+    public void removeRedemption(String redemptionId) {
+        if (redemptionId != null) {
+            redemptionsById.remove(redemptionId);
+        }
+    }
+
+    public Optional<CreditCard> card(String cardId) {
+        CardEntry entry = cardsById.get(cardId);
+        return entry == null ? Optional.empty() : Optional.of(entry.card());
+    }
+
+    /**
+     * Live view of all cards in insertion order.
+     */
+    public Collection<CreditCard> cards() {
+        return cardsInOrder.values();
+    }
+
+    /**
+     * Returns up to {@code limit} matching cards added after the given position. Positions are stable across
+     * concurrent inserts and deletes, so a cursor built from {@link Page#nextSequence()} never skips or repeats cards.
+     * @param afterSequence Position to start after, or null to start at the first card.
+     */
+    public Page page(Long afterSequence, Predicate<CreditCard> filter, int limit) {
+        Collection<Map.Entry<Long, CreditCard>> candidates = afterSequence == null
+                ? cardsInOrder.entrySet()
+                : cardsInOrder.tailMap(afterSequence, false).entrySet();
+        List<CreditCard> cards = new ArrayList<>(limit);
+        Long lastSequence = null;
+        for (Map.Entry<Long, CreditCard> candidate : candidates) {
+            if (!filter.test(candidate.getValue())) {
+                continue;
+            }
+            if (cards.size() == limit) {
+                return new Page(cards, lastSequence);
+            }
+            cards.add(candidate.getValue());
+            lastSequence = candidate.getKey();
+        }
+        return new Page(cards, null);
+    }
+
+    public Optional<RedemptionRef> redemptionRef(String redemptionId) {
+        return Optional.ofNullable(redemptionsById.get(redemptionId));
+    }
+
+    /**
+     * Looks up a redemption, but only if it belongs to the given card.
+     */
+    public Optional<Redemption> redemption(String cardId, String redemptionId) {
+        RedemptionRef ref = redemptionsById.get(redemptionId);
+        if (ref == null || !ref.card().getId().equals(cardId)) {
+            return Optional.empty();
+        }
+        return Optional.of(ref.redemption());
+    }
+
+    /**
+     * Records that the card changed in the given dataset version. Versions only move forward, so a slower writer
+     * stamping an older version never hides a newer change. Ignored if the card is no longer indexed.
+     */
+    public void stampVersion(String cardId, long version) {
+        if (cardsById.containsKey(cardId)) {
+            versionsById.merge(cardId, version, Math::max);
+        }
+    }
+
+    /**
+     * @return The dataset version of the card's last change, or 0 if it has not changed since it was loaded.
+     */
+    public long version(String cardId) {
+        return versionsById.getOrDefault(cardId, 0L);
+    }
+
+    public int cardCount() {
+        return cardsById.size();
+    }
+
+    public int redemptionCount() {
+        return redemptionsById.size();
+    }
+}
@@ -1,50 +1,257 @@
 package com.example.demo.service;
 
+import com.example.demo.model.BatchOperation;
+import com.example.demo.model.BatchResult;
+import com.example.demo.model.CardPage;
 import com.example.demo.model.CreditCard;
+import com.example.demo.model.ImportResult;
+import com.example.demo.model.PeriodSet;
 import com.example.demo.model.Redemption;
-import com.example.demo.util.JsonDataManager;
+import com.example.demo.repository.CreditCardRepository;
+import com.example.demo.repository.WriteBehindCreditCardRepository;
+import com.example.demo.util.ChangeRecord;
+import com.example.demo.util.HistoryLog;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
 import java.util.Set;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+/**
+ * Holds the portfolio in memory and applies every mutation to it.
+ * Mutations of a card and its redemptions run under that card's lock (see {@link CardLocks}), so requests for
+ * different cards never wait on each other. Card and redemption collections are concurrent so readers can iterate
+ * them while writers are active.
+ * <p>
+ * Every public operation is timed as {@code creditcards.service} (tagged by method); rollovers additionally record
+ * {@code creditcards.rollover} and the number of cards and redemptions they reset.
+ * <p>
+ * Every change is published to the {@link ChangeFeed}, whose sequence number is the dataset version, and that version
+ * is stamped on each card it touched before the change is handed to the repository. Versions are only comparable
+ * within one process; they start again at 0 on restart (see {@link ChangeFeed#tag(long)}).
+ */
 @Service
+@Timed(value = "creditcards.service", histogram = true)
 public class CreditCardService {
-    private final JsonDataManager dataManager;
+    private static final Logger log = LoggerFactory.getLogger(CreditCardService.class);
+
+    private final CreditCardRepository repository;
+    private final CreditCardIndex index = new CreditCardIndex();
+    private final CardLocks locks;
+    private final ReimbursementTotals totals = new ReimbursementTotals();
+    private final RolloverSchedule rolloverSchedule = new RolloverSchedule();
+    private final OutstandingCredits outstandingCredits = new OutstandingCredits();
+    // The year the completed period sets are currently tracking, or -1 while they are all empty
+    private final AtomicInteger trackedYear = new AtomicInteger(-1);
+    private final ChangeFeed changeFeed;
+    private final CompletionHistory history;
+
+    private static final int ROLLOVER_CHUNK_SIZE = 512;
+
+    private final Timer rolloverTimer;
+    private final Counter redemptionsReset;
+    private final Counter cardsRolledOver;
 
-    public CreditCardService(JsonDataManager dataManager) {
-        this.dataManager = dataManager;
-        this.creditCards = dataManager.loadData();
-        resetRedemptions(); // Call reset immediately after loading data
+    public CreditCardService(CreditCardRepository repository) {
+        // A registry of its own: gauges registered globally would clash with any other service in the JVM
+        this(repository, false, 0, 0, 10_000, "", new CompositeMeterRegistry());
+        resetRedemptions(); // No scheduler runs the catch-up, so do it before the service is used
     }
 
-    private List<CreditCard> creditCards;
+    /**
+     * Loads the cards but does not catch up on period boundaries that passed while the app was down; the
+     * {@link com.example.demo.scheduler.RedemptionScheduler} does that in the background, so reads are served
+     * straight away.
+     *
+     * @param writeBehind Queue changes and write them on a background thread instead of on the calling thread
+     *                    (see {@link WriteBehindCreditCardRepository}).
+     * @param changeHistory Number of change events kept for subscribers that resume after a disconnect.
+     * @param historyPath File the completion history is kept in, or empty to keep it in memory only.
+     */
+    @Autowired
+    public CreditCardService(CreditCardRepository repository,
+                             @Value("${app.data.write-behind.enabled:false}") boolean writeBehind,
+                             @Value("${app.data.write-behind.window-ms:20}") long writeBehindWindowMs,
+                             @Value("${app.data.write-behind.max-staleness-ms:1000}") long writeBehindMaxStalenessMs,
+                             @Value("${app.changes.history:10000}") int changeHistory,
+                             @Value("${app.history.filepath:creditcards-history.bin}") String historyPath,
+                             MeterRegistry meterRegistry) {
+        this.repository = writeBehind
+                ? new WriteBehindCreditCardRepository(repository, writeBehindWindowMs, writeBehindMaxStalenessMs,
+                        meterRegistry)
+                : repository;
+        this.changeFeed = new ChangeFeed(changeHistory);
+        this.history = new CompletionHistory(historyPath.isEmpty() ? null : new HistoryLog(Path.of(historyPath)));
+        this.rolloverTimer = Timer.builder("creditcards.rollover")
+                .description("Time to reset redemptions whose period ended")
+                .register(meterRegistry);
+        this.redemptionsReset = Counter.builder("creditcards.rollover.redemptions")
+                .description("Redemptions unchecked because their period ended")
+                .register(meterRegistry);
+        this.cardsRolledOver = Counter.builder("creditcards.rollover.cards")
+                .description("Cards whose yearly summary was written at a year rollover")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.cards", index, CreditCardIndex::cardCount).register(meterRegistry);
+        Gauge.builder("creditcards.redemptions", index, CreditCardIndex::redemptionCount).register(meterRegistry);
+        Gauge.builder("creditcards.redemptions.checked", rolloverSchedule, RolloverSchedule::size)
+                .register(meterRegistry);
+        Gauge.builder("creditcards.redemptions.outstanding", outstandingCredits, OutstandingCredits::size)
+                .description("Unchecked redemptions with a frequency, whose credit expires at the end of the period")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.storage.size", this.repository, CreditCardRepository::sizeOnDisk)
+                .baseUnit("bytes")
+                .description("Size of the data files on disk, or -1 if unknown")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.history.completions", history, CompletionHistory::size)
+                .description("Completions and unchecks recorded in the completion history")
+                .register(meterRegistry);
 
-    public List<CreditCard> getAllCreditCards() {
-        int currentCalendarYear = LocalDate.now().getYear();
-        for (CreditCard card : creditCards) {
-            double cardTotalThisYear = 0.0;
-            if (card.getRedemptions() != null) {
-                for (Redemption redemption : card.getRedemptions()) {
-                    if (!redemption.getCompletedPeriodsThisYear().isEmpty()) {
-                        // The set should only contain entries for the current year due to resetRedemptions logic
-                        cardTotalThisYear += redemption.getAmount() * redemption.getCompletedPeriodsThisYear().size();
+        long start = System.nanoTime();
+        List<CreditCard> loaded = repository.loadAll();
+        loaded.forEach(this::prepareForConcurrentAccess);
+        index.rebuild(loaded);
+        totals.rebuild(loaded);
+        // Tenant partitions are mostly small, so they get a few stripes rather than a full set per processor
+        this.locks = new CardLocks(Math.max(16,
+                Math.min(loaded.size(), Runtime.getRuntime().availableProcessors() * 16)));
+        LocalDate today = LocalDate.now();
+        for (CreditCard card : loaded) {
+            for (Redemption redemption : card.getRedemptions()) {
+                rolloverSchedule.update(redemption, today);
+                outstandingCredits.update(card.getId(), redemption, today);
+                // Redemptions from before the history existed start at the beginning of the year they track
+                if (history.track(card.getId(), redemption, today.withDayOfYear(1))) {
+                    for (int period : redemption.getCompletedPeriodsThisYear().periods()) {
+                        history.completed(card.getId(), redemption, period, PeriodSet.startDate(period));
                     }
                 }
+                int periodYear = redemption.getCompletedPeriodsThisYear().firstYear();
+                if (periodYear != -1) {
+                    trackYear(periodYear);
+                }
             }
-            card.setCurrentYearTotal(cardTotalThisYear);
         }
-        return creditCards;
+        // Completions of earlier years were replayed from the history, but can no longer be unchecked
+        history.closeYearsThrough((trackedYear.get() == -1 ? today.getYear() : trackedYear.get()) - 1);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // Tenant partitions are loaded all day long and are mostly fast; only slow loads are worth an info line
+        log.atLevel(elapsedMs >= 100 ? Level.INFO : Level.DEBUG)
+                .log("Loaded {} credit cards with {} redemptions in {} ms", index.cardCount(),
+                        index.redemptionCount(), elapsedMs);
+    }
+
+    /**
+     * Returns every card. Each card's currentYearTotal is maintained incrementally, so nothing is recomputed here.
+     */
+    public List<CreditCard> getAllCreditCards() {
+        return snapshot();
+    }
+
+    /**
+     * Returns one page of cards matching the filter, in the order they were added.
+     * @param cursor The nextCursor of the previous page, or null for the first page.
+     */
+    public CardPage<CreditCard> getCreditCardPage(String cursor, CardFilter filter, int limit) {
+        Long afterSequence = cursor == null || cursor.isEmpty() ? null : decodeCursor(cursor);
+        CreditCardIndex.Page page = index.page(afterSequence, filter, limit);
+        return new CardPage<>(page.cards(), page.nextSequence() == null ? null : encodeCursor(page.nextSequence()));
+    }
+
+    /**
+     * Blocks until every change made so far has been persisted, for callers that need write-through durability
+     * while write-behind is enabled.
+     */
+    public void flush() {
+        repository.flush();
+    }
+
+    /**
+     * @return Queue depth and flush latency of the write-behind queue, or empty if write-behind is disabled.
+     */
+    public Optional<WriteBehindCreditCardRepository.Stats> getWriteBehindStats() {
+        return repository instanceof WriteBehindCreditCardRepository writeBehind
+                ? Optional.of(writeBehind.stats())
+                : Optional.empty();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (repository instanceof WriteBehindCreditCardRepository writeBehind) {
+            writeBehind.close(); // Flushes whatever is still queued
+        }
+        history.close();
+    }
+
+    /**
+     * The version of the whole dataset, increased by every change. A reader that takes the version before reading
+     * sees at least every change up to that version.
+     */
+    public long getDatasetVersion() {
+        return changeFeed.lastSequence();
+    }
+
+    /**
+     * Every change from now on, numbered by dataset version, plus the most recent ones for resuming subscribers.
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * The dataset version of the card's last change, or 0 if it has not changed since startup.
+     */
+    public long getCardVersion(String id) {
+        return index.version(id);
+    }
+
+    public int getCardCount() {
+        return index.cardCount();
+    }
+
+    public int getRedemptionCount() {
+        return index.redemptionCount();
+    }
+
+    /**
+     * Number of completions and unchecks held by the completion history.
+     */
+    public int getHistorySize() {
+        return history.size();
     }
 
     public Optional<CreditCard> getCreditCardById(String id) {
-        return creditCards.stream().filter(card -> card.getId().equals(id)).findFirst();
+        return index.card(id);
     }
 
     public CreditCard addCreditCard(CreditCard creditCard) {
@@ -52,59 +259,185 @@ public class CreditCardService {
         if (creditCard.getRedemptions() != null) {
             creditCard.getRedemptions().forEach(redemption -> {
                 redemption.setId(UUID.randomUUID().toString());
-                redemption.setCompletedPeriodsThisYear(new HashSet<>()); // Initialize the new set
+                redemption.setCompletedPeriodsThisYear(new PeriodSet()); // Initialize the new set
             });
         }
-        creditCards.add(creditCard);
-        dataManager.saveData(creditCards);
-        return creditCard;
+        prepareForConcurrentAccess(creditCard);
+        return locks.withCardLock(creditCard.getId(), () -> {
+            track(creditCard, LocalDate.now());
+            persist(ChangeRecord.putCard(creditCard));
+            return creditCard;
+        });
+    }
+
+    /**
+     * Adds a catalog of new cards, each treated as by {@link #addCreditCard}, and persists them as one change.
+     * Validation, id assignment and period set initialization run in parallel chunks; the new cards are then
+     * indexed and persisted under all their locks, as in {@link #applyBatch}. All-or-nothing: if any card is
+     * invalid, nothing is added and every invalid card is reported.
+     */
+    public ImportResult importCreditCards(List<CreditCard> cards) {
+        List<ImportResult.Problem> errors = IntStream.range(0, cards.size())
+                .parallel()
+                .mapToObj(i -> {
+                    String error = validateImport(cards.get(i));
+                    return error == null ? null : new ImportResult.Problem(i + 1, error);
+                })
+                .filter(Objects::nonNull)
+                .toList();
+        if (!errors.isEmpty()) {
+            return new ImportResult(false, 0, 0, errors);
+        }
+        List<ChangeRecord> changes = inParallelChunks(cards, chunk -> chunk.stream().map(card -> {
+            card.setId(UUID.randomUUID().toString());
+            if (card.getRedemptions() != null) {
+                card.getRedemptions().forEach(redemption -> {
+                    redemption.setId(UUID.randomUUID().toString());
+                    redemption.setCompletedPeriodsThisYear(new PeriodSet());
+                });
+            }
+            prepareForConcurrentAccess(card);
+            return ChangeRecord.putCard(card);
+        }).toList());
+        LocalDate today = LocalDate.now();
+        // Persisted before the locks are released, so a delete of a new card is always stored after it was added
+        locks.withCardLocks(cards.stream().map(CreditCard::getId).toList(), () -> {
+            cards.forEach(card -> track(card, today));
+            if (!changes.isEmpty()) {
+                persist(changes);
+            }
+            return null;
+        });
+        int redemptions = cards.stream().mapToInt(card -> card.getRedemptions().size()).sum();
+        log.info("Imported {} credit cards with {} redemptions", cards.size(), redemptions);
+        return new ImportResult(true, cards.size(), redemptions, List.of());
+    }
+
+    /**
+     * Every card in the order they were added, read lazily: cards added or removed during the iteration may or may
+     * not be included, but no card is returned twice.
+     */
+    public Stream<CreditCard> streamCreditCards() {
+        return index.cards().stream();
+    }
+
+    private static String validateImport(CreditCard card) {
+        if (card == null) {
+            return "card is required";
+        }
+        if (card.getName() == null || card.getName().isBlank()) {
+            return "name is required";
+        }
+        if (card.getRedemptions() != null) {
+            for (Redemption redemption : card.getRedemptions()) {
+                if (redemption == null) {
+                    return "redemptions must not contain null";
+                }
+                if (redemption.getName() == null || redemption.getName().isBlank()) {
+                    return "redemption name is required";
+                }
+                if (!(redemption.getAmount() >= 0) || Double.isInfinite(redemption.getAmount())) {
+                    return "redemption amount must be a non-negative number";
+                }
+            }
+        }
+        return null;
     }
 
+    /**
+     * Adds a new card to the index and every structure kept per redemption. Must be called holding the card's lock.
+     */
+    private void track(CreditCard card, LocalDate today) {
+        index.putCard(card);
+        totals.track(card);
+        card.getRedemptions().forEach(redemption -> {
+            rolloverSchedule.update(redemption, today);
+            outstandingCredits.update(card.getId(), redemption, today);
+            history.track(card.getId(), redemption, today);
+        });
+    }
+
+    /**
+     * Replaces a card's name, description and redemptions. Redemptions keep the ids they are sent with, except an id
+     * that belongs to another card or appears twice, which gets a new one like a redemption sent without an id.
+     */
     public Optional<CreditCard> updateCreditCard(String id, CreditCard updatedCard) {
-        return getCreditCardById(id).map(card -> {
+        if (updatedCard.getRedemptions() != null) {
+            updatedCard.getRedemptions().forEach(redemption -> {
+                if (redemption.getId() == null) {
+                    redemption.setId(UUID.randomUUID().toString()); // New redemptions need an id to be indexed
+                }
+                if (redemption.getCompletedPeriodsThisYear() == null) {
+                    redemption.setCompletedPeriodsThisYear(new PeriodSet()); // Initialize for new redemptions in update
+                }
+            });
+        }
+        prepareForConcurrentAccess(updatedCard);
+        return locks.withCardLock(id, () -> index.card(id).map(card -> {
             card.setName(updatedCard.getName());
             card.setDescription(updatedCard.getDescription());
+            index.removeRedemptionsOf(card);
+            card.getRedemptions().forEach(redemption -> {
+                rolloverSchedule.remove(redemption.getId());
+                outstandingCredits.remove(redemption.getId());
+            });
             if (updatedCard.getRedemptions() != null) {
                 updatedCard.getRedemptions().forEach(redemption -> {
-                    if (redemption.getCompletedPeriodsThisYear() == null) {
-                        redemption.setCompletedPeriodsThisYear(new HashSet<>()); // Initialize for new redemptions in update
+                    while (!index.putRedemptionIfAbsent(card, redemption)) {
+                        redemption.setId(UUID.randomUUID().toString()); // Taken by another card, or repeated
                     }
                 });
             }
+            recordHistoryOfUpdate(card, updatedCard.getRedemptions(), LocalDate.now());
             card.setRedemptions(updatedCard.getRedemptions());
-            dataManager.saveData(creditCards);
+            index.putCard(card);
+            totals.recompute(card); // Amounts and period sets may all have changed
+            card.getRedemptions().forEach(redemption -> {
+                rolloverSchedule.update(redemption, LocalDate.now());
+                outstandingCredits.update(card.getId(), redemption, LocalDate.now());
+            });
+            persist(ChangeRecord.putCard(card));
             return card;
-        });
+        }));
     }
 
     public boolean deleteCreditCard(String id) {
-        boolean removed = creditCards.removeIf(card -> card.getId().equals(id));
-        if (removed) {
-            dataManager.saveData(creditCards);
-        }
-        return removed;
+        return locks.withCardLock(id, () -> {
+            Optional<CreditCard> cardOptional = index.card(id);
+            if (cardOptional.isEmpty()) {
+                return false;
+            }
+            index.removeCard(cardOptional.get());
+            totals.untrack(cardOptional.get());
+            cardOptional.get().getRedemptions().forEach(redemption -> {
+                rolloverSchedule.remove(redemption.getId());
+                outstandingCredits.remove(redemption.getId());
+                history.untrack(redemption.getId(), LocalDate.now());
+            });
+            persist(ChangeRecord.deleteCard(id));
+            return true;
+        });
     }
 
     public Optional<Redemption> addRedemption(String cardId, Redemption redemption) {
-        return getCreditCardById(cardId).map(card -> {
-            redemption.setId(UUID.randomUUID().toString());
-            redemption.setCompletedPeriodsThisYear(new HashSet<>()); // Initialize for new redemption
-            card.getRedemptions().add(redemption);
-            dataManager.saveData(creditCards);
+        redemption.setId(UUID.randomUUID().toString());
+        redemption.setCompletedPeriodsThisYear(new PeriodSet()); // Initialize for new redemption
+        return locks.withCardLock(cardId, () -> index.card(cardId).map(card -> {
+            persist(applyAddRedemption(card, redemption));
             return redemption;
-        });
+        }));
     }
 
     public boolean deleteRedemption(String cardId, String redemptionId) {
-        Optional<CreditCard> cardOptional = getCreditCardById(cardId);
-        if (cardOptional.isPresent()) {
-            boolean removed = cardOptional.get().getRedemptions().removeIf(red -> red.getId().equals(redemptionId));
-            if (removed) {
-                dataManager.saveData(creditCards);
+        return locks.withCardLock(cardId, () -> {
+            Optional<Redemption> redemptionOptional = index.redemption(cardId, redemptionId);
+            if (redemptionOptional.isEmpty()) {
+                return false;
             }
-            return removed;
-        }
-        return false;
+            CreditCard card = index.card(cardId).orElseThrow();
+            persist(applyDeleteRedemption(card, redemptionOptional.get()));
+            return true;
+        });
     }
 
     /**
@@ -112,164 +445,450 @@ public class CreditCardService {
      * This is used to track completion and prevent double-counting within the same period.
      * @param redemption The redemption item.
      * @param date The date for which to generate the period identifier.
-     * @return A string identifier (e.g., "2026-M10", "2026-Q4", "2026-H2", "2026-Y").
+     * @return A packed period identifier (see {@link PeriodSet}); written to JSON as e.g. "2026-M10".
      */
-    private String getPeriodIdentifier(Redemption redemption, LocalDate date) {
-        int year = date.getYear();
-        return switch (redemption.getFrequency()) {
-            case MONTHLY -> String.format("%d-M%02d", year, date.getMonthValue());
-            case QUARTERLY -> String.format("%d-Q%d", year, (date.getMonthValue() - 1) / 3 + 1);
-            case BIANNUAL -> String.format("%d-H%d", year, (date.getMonthValue() <= 6 ? 1 : 2));
-            case YEARLY -> String.format("%d-Y", year);
-        };
+    private int getPeriodIdentifier(Redemption redemption, LocalDate date) {
+        return PeriodSet.of(redemption.getFrequency(), date);
     }
 
     public Optional<Redemption> updateRedemptionStatus(String cardId, String redemptionId, boolean checked) {
-        return getCreditCardById(cardId)
-                .flatMap(card -> card.getRedemptions().stream()
-                        .filter(red -> red.getId().equals(redemptionId))
-                        .findFirst()
-                        .map(red -> {
-                            red.setChecked(checked);
-                            if (checked) {
-                                red.setLastCheckedDate(LocalDate.now());
-                                String periodId = getPeriodIdentifier(red, LocalDate.now());
-                                red.getCompletedPeriodsThisYear().add(periodId);
-                            } else {
-                                red.setLastCheckedDate(null); // Clear last checked date if unchecked
-                                String periodId = getPeriodIdentifier(red, LocalDate.now());
-                                red.getCompletedPeriodsThisYear().remove(periodId);
-                            }
-                            dataManager.saveData(creditCards);
-                            return red;
-                        }));
+        return locks.withCardLock(cardId, () -> index.redemption(cardId, redemptionId)
+                .map(red -> {
+                    CreditCard card = index.card(cardId).orElseThrow();
+                    persist(applyRedemptionStatus(card, red, checked));
+                    return red;
+                }));
     }
 
-    public void resetRedemptions() {
-        LocalDate now = LocalDate.now();
-        boolean dataChanged = false;
-        int currentCalendarYear = now.getYear();
+    /**
+     * Applies a list of redemption operations atomically: all involved cards are locked, every operation is
+     * validated, and either all of them are applied and persisted together or none is.
+     */
+    public BatchResult applyBatch(List<BatchOperation> operations) {
+        List<String> cardIds = new ArrayList<>();
+        for (BatchOperation operation : operations) {
+            if (operation != null && operation.getCardId() != null) {
+                cardIds.add(operation.getCardId());
+            }
+        }
+        // Ids are assigned before locking, as in addRedemption
+        for (BatchOperation operation : operations) {
+            if (operation != null && operation.getType() == BatchOperation.Type.ADD
+                    && operation.getRedemption() != null) {
+                operation.getRedemption().setId(UUID.randomUUID().toString());
+                operation.getRedemption().setCompletedPeriodsThisYear(new PeriodSet());
+            }
+        }
+        return locks.withCardLocks(cardIds, () -> {
+            List<BatchResult.Item> results = validateBatch(operations);
+            if (results.stream().anyMatch(item -> item.getStatus() != BatchResult.Status.NOT_APPLIED)) {
+                return new BatchResult(false, results);
+            }
+            List<ChangeRecord> changes = new ArrayList<>(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                BatchOperation operation = operations.get(i);
+                CreditCard card = index.card(operation.getCardId()).orElseThrow();
+                Redemption redemption = operation.getType() == BatchOperation.Type.ADD
+                        ? operation.getRedemption()
+                        : index.redemption(operation.getCardId(), operation.getRedemptionId()).orElseThrow();
+                changes.add(switch (operation.getType()) {
+                    case ADD -> applyAddRedemption(card, redemption);
+                    case DELETE -> applyDeleteRedemption(card, redemption);
+                    case CHECK -> applyRedemptionStatus(card, redemption, true);
+                    case UNCHECK -> applyRedemptionStatus(card, redemption, false);
+                });
+                results.set(i, new BatchResult.Item(BatchResult.Status.APPLIED,
+                        operation.getType() == BatchOperation.Type.DELETE ? null : redemption, null));
+            }
+            if (!changes.isEmpty()) {
+                persist(changes);
+            }
+            return new BatchResult(true, results);
+        });
+    }
 
-        // --- Step 1: Handle Year Rollover for all Cards ---
-        // Determine the year that 'completedPeriodsThisYear' is currently tracking.
-        // We assume all redemptions in `completedPeriodsThisYear` are for the same year.
-        int lastTrackedYearInPeriods = -1;
-        for (CreditCard card : creditCards) {
-            for (Redemption redemption : card.getRedemptions()) {
-                if (!redemption.getCompletedPeriodsThisYear().isEmpty()) {
-                    String anyPeriodId = redemption.getCompletedPeriodsThisYear().iterator().next();
-                    lastTrackedYearInPeriods = Integer.parseInt(anyPeriodId.substring(0, 4));
-                    break; 
+    /**
+     * Checks every operation against the current state, as if the earlier operations of the batch had already run.
+     * Valid operations are reported as NOT_APPLIED. Must be called holding the locks of all involved cards.
+     */
+    private List<BatchResult.Item> validateBatch(List<BatchOperation> operations) {
+        List<BatchResult.Item> results = new ArrayList<>(operations.size());
+        Set<String> deleted = new HashSet<>();
+        for (BatchOperation operation : operations) {
+            String error = null;
+            BatchResult.Status status = BatchResult.Status.INVALID;
+            if (operation == null || operation.getType() == null || operation.getCardId() == null) {
+                error = "type and cardId are required";
+            } else if (operation.getType() == BatchOperation.Type.ADD) {
+                if (operation.getRedemption() == null) {
+                    error = "redemption is required for ADD";
+                } else if (index.card(operation.getCardId()).isEmpty()) {
+                    status = BatchResult.Status.NOT_FOUND;
+                    error = "card not found";
                 }
+            } else if (operation.getRedemptionId() == null) {
+                error = "redemptionId is required for " + operation.getType();
+            } else if (deleted.contains(operation.getRedemptionId())
+                    || index.redemption(operation.getCardId(), operation.getRedemptionId()).isEmpty()) {
+                status = BatchResult.Status.NOT_FOUND;
+                error = "redemption not found";
+            } else if (operation.getType() == BatchOperation.Type.DELETE) {
+                deleted.add(operation.getRedemptionId());
+            }
+            results.add(error == null
+                    ? new BatchResult.Item(BatchResult.Status.NOT_APPLIED, null, null)
+                    : new BatchResult.Item(status, null, error));
+        }
+        return results;
+    }
+
+    // The apply* methods change the in-memory state and return the record to persist.
+    // They must be called while holding the card's lock.
+
+    private ChangeRecord applyAddRedemption(CreditCard card, Redemption redemption) {
+        card.getRedemptions().add(redemption);
+        index.putRedemption(card, redemption);
+        rolloverSchedule.update(redemption, LocalDate.now());
+        outstandingCredits.update(card.getId(), redemption, LocalDate.now());
+        history.track(card.getId(), redemption, LocalDate.now());
+        return ChangeRecord.putRedemption(card.getId(), redemption);
+    }
+
+    private ChangeRecord applyDeleteRedemption(CreditCard card, Redemption redemption) {
+        card.getRedemptions().remove(redemption);
+        totals.adjust(card, -redemption.getAmount() * redemption.getCompletedPeriodsThisYear().size());
+        index.removeRedemption(redemption.getId());
+        rolloverSchedule.remove(redemption.getId());
+        outstandingCredits.remove(redemption.getId());
+        history.untrack(redemption.getId(), LocalDate.now());
+        return ChangeRecord.deleteRedemption(card.getId(), redemption.getId());
+    }
+
+    private ChangeRecord applyRedemptionStatus(CreditCard card, Redemption red, boolean checked) {
+        LocalDate today = LocalDate.now();
+        red.setChecked(checked);
+        if (checked) {
+            red.setLastCheckedDate(today);
+            int periodId = getPeriodIdentifier(red, today);
+            if (red.getCompletedPeriodsThisYear().add(periodId)) {
+                totals.adjust(card, red.getAmount());
+                history.completed(card.getId(), red, periodId, today);
             }
-            if (lastTrackedYearInPeriods != -1) {
-                break;
+            trackYear(today.getYear());
+        } else {
+            red.setLastCheckedDate(null); // Clear last checked date if unchecked
+            int periodId = getPeriodIdentifier(red, today);
+            if (red.getCompletedPeriodsThisYear().remove(periodId)) {
+                totals.adjust(card, -red.getAmount());
+                history.revoked(card.getId(), red, periodId, today);
             }
         }
+        rolloverSchedule.update(red, today);
+        outstandingCredits.update(card.getId(), red, today);
+        return ChangeRecord.putRedemption(card.getId(), red);
+    }
 
-        // If the current calendar year is greater than the year we were tracking periods for
-        if (lastTrackedYearInPeriods != -1 && currentCalendarYear > lastTrackedYearInPeriods) {
-            // It's a new year - time to save summaries and clear for new tracking
-            for (CreditCard card : creditCards) {
-                double previousYearTotalForCard = 0.0;
-                for (Redemption redemption : card.getRedemptions()) {
-                    // Sum amounts for all completed periods from the *previous* year
-                    for (String periodId : redemption.getCompletedPeriodsThisYear()) {
-                        if (Integer.parseInt(periodId.substring(0, 4)) == lastTrackedYearInPeriods) {
-                             previousYearTotalForCard += redemption.getAmount();
-                        }
-                    }
+    /**
+     * Records in the completion history what replacing the card's redemptions changes: new and removed redemptions,
+     * changed amounts or frequencies, and periods completed or undone in the submitted period sets.
+     */
+    private void recordHistoryOfUpdate(CreditCard card, List<Redemption> updated, LocalDate today) {
+        Map<String, Redemption> previous = new HashMap<>();
+        card.getRedemptions().forEach(redemption -> previous.put(redemption.getId(), redemption));
+        for (Redemption redemption : updated) {
+            Redemption before = previous.remove(redemption.getId());
+            int[] oldPeriods = before == null ? new int[0] : before.getCompletedPeriodsThisYear().periods();
+            int[] newPeriods = redemption.getCompletedPeriodsThisYear().periods();
+            history.track(card.getId(), redemption, today);
+            for (int period : newPeriods) {
+                if (Arrays.binarySearch(oldPeriods, period) < 0) {
+                    history.completed(card.getId(), redemption, period, today);
                 }
-                // Save this card's total for the previous year
-                card.getYearlyReimbursementSummaries().put(lastTrackedYearInPeriods, previousYearTotalForCard);
-                dataChanged = true;
-
-                // Clear `completedPeriodsThisYear` for all redemptions on this card for the new year
-                for (Redemption redemption : card.getRedemptions()) {
-                    if (!redemption.getCompletedPeriodsThisYear().isEmpty()) {
-                        redemption.getCompletedPeriodsThisYear().clear();
-                        // Also clear lastCheckedDate if not null, as yearly periods are done
-                        redemption.setLastCheckedDate(null);
-                        dataChanged = true;
-                    }
+            }
+            for (int period : oldPeriods) {
+                if (Arrays.binarySearch(newPeriods, period) < 0) {
+                    history.revoked(card.getId(), before, period, today);
                 }
             }
         }
+        previous.keySet().forEach(redemptionId -> history.untrack(redemptionId, today));
+    }
+
+    /**
+     * Unchecks redemptions whose period has ended and, at a new year, stores each card's previous-year total.
+     * Only the redemptions the rollover schedule reports as due are touched, in parallel chunks; the full pass over
+     * all cards happens only once a year. Each chunk is reset and persisted under the locks of its own cards only, as
+     * in {@link #applyBatch}: a concurrent delete is always stored after the reset and never before it, and the rest
+     * of the portfolio stays writable while the rollover runs. Safe to call at any time, and catches up correctly
+     * however many boundaries have passed since the last call.
+     */
+    public void resetRedemptions() {
+        long start = System.nanoTime();
+        LocalDate now = LocalDate.now();
+
+        // --- Step 1: Handle Year Rollover for all Cards ---
+        // If the current calendar year is greater than the year we were tracking periods for,
+        // it's a new year - time to save summaries and clear for new tracking. Each year since is closed in turn.
+        int rolledOverCards = 0;
+        int rolloverYear;
+        while ((rolloverYear = trackedYear.get()) != -1 && now.getYear() > rolloverYear
+                && trackedYear.compareAndSet(rolloverYear, -1)) {
+            int closedYear = rolloverYear;
+            // Periods already checked off in a later year, e.g. on Jan 1 before this ran, keep that year tracked
+            AtomicInteger firstYearLeft = new AtomicInteger(now.getYear());
+            int closedCards = inParallelChunks(snapshot(), cards -> {
+                List<String> cardIds = cards.stream().map(CreditCard::getId).toList();
+                return persistLocked(cardIds, () -> rolloverYear(cards, closedYear, firstYearLeft));
+            }).size();
+            trackYear(firstYearLeft.get());
+            history.closeYearsThrough(closedYear);
+            rolledOverCards += closedCards;
+            log.info("Closed reimbursement year {} on {} cards", closedYear, closedCards);
+        }
+        // --- Step 2: Uncheck every redemption whose period ended on or before today ---
+        List<String> due = rolloverSchedule.pollDue(now);
+
+        int uncheckedRedemptions = inParallelChunks(due, ids -> {
+            Set<String> cardIds = new HashSet<>();
+            ids.forEach(id -> index.redemptionRef(id).ifPresent(ref -> cardIds.add(ref.card().getId())));
+            return persistLocked(cardIds, () -> uncheckDue(ids, cardIds, now));
+        }).size();
+        long elapsed = System.nanoTime() - start;
+        rolloverTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        cardsRolledOver.increment(rolledOverCards);
+        redemptionsReset.increment(uncheckedRedemptions);
+        if (rolledOverCards + uncheckedRedemptions > 0) {
+            log.info("Rollover reset {} redemptions in {} ms", uncheckedRedemptions,
+                    TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    /**
+     * The next date on which {@link #resetRedemptions()} has work to do, or null if nothing is checked or completed.
+     */
+    public LocalDate getNextRolloverDate() {
+        LocalDate next = rolloverSchedule.firstBoundary();
+        int year = trackedYear.get();
+        if (year != -1) {
+            LocalDate newYear = LocalDate.of(year + 1, 1, 1);
+            if (next == null || newYear.isBefore(next)) {
+                next = newYear;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Registers a callback for when the next rollover date moves earlier, e.g. after the first monthly check-off.
+     */
+    public void onNextRolloverDateChanged(Runnable listener) {
+        rolloverSchedule.setEarlierBoundaryListener(listener);
+    }
 
-        // --- Step 2: Handle Regular Period Resets (Monthly, Quarterly, Biannual, Yearly Checkboxes) ---
-        // This is for unchecking redemptions due to period rollovers within the *current* active tracking year.
-        // It's separate from saving the annual summary.
-        for (CreditCard card : creditCards) {
+    /**
+     * Tracks completions in {@code year}; the earliest tracked year is the one the next rollover closes.
+     */
+    private void trackYear(int year) {
+        trackedYear.accumulateAndGet(year, (current, added) -> current == -1 ? added : Math.min(current, added));
+    }
+
+    /**
+     * Applies one chunk of a reset and persists it before the locks of its cards are released.
+     */
+    private List<ChangeRecord> persistLocked(Collection<String> cardIds, Supplier<List<ChangeRecord>> reset) {
+        return locks.withCardLocks(cardIds, () -> {
+            List<ChangeRecord> changes = reset.get();
+            if (!changes.isEmpty()) {
+                persist(changes);
+            }
+            return changes;
+        });
+    }
+
+    // rolloverYear and uncheckDue must be called while the caller holds the locks of all the cards involved.
+
+    private List<ChangeRecord> rolloverYear(List<CreditCard> cards, int rolloverYear, AtomicInteger firstYearLeft) {
+        List<ChangeRecord> changes = new ArrayList<>();
+        for (CreditCard card : cards) {
+            // Skip cards deleted since the snapshot was taken
+            if (index.card(card.getId()).filter(current -> current == card).isEmpty()) {
+                continue;
+            }
+            double previousYearTotalForCard = 0.0;
             for (Redemption redemption : card.getRedemptions()) {
-                boolean shouldResetCheckbox = false;
-
-                if (redemption.isChecked() && redemption.getLastCheckedDate() != null) {
-                    LocalDate lastChecked = redemption.getLastCheckedDate();
-
-                    // Only apply intra-year reset logic if lastCheckedDate is from the *current tracking year*.
-                    // If it's from a previous year, the year rollover logic (Step 1) should have handled it.
-                    if (lastChecked.getYear() == currentCalendarYear) {
-                        switch (redemption.getFrequency()) {
-                            case MONTHLY:
-                                shouldResetCheckbox = now.getMonthValue() > lastChecked.getMonthValue();
-                                break;
-                            case QUARTERLY:
-                                int currentQuarter = (now.getMonthValue() - 1) / 3;
-                                int lastCheckedQuarter = (lastChecked.getMonthValue() - 1) / 3;
-                                shouldResetCheckbox = currentQuarter > lastCheckedQuarter;
-                                break;
-                            case BIANNUAL:
-                                int currentHalfYear = now.getMonthValue() <= 6 ? 0 : 1;
-                                int lastCheckedHalfYear = lastChecked.getMonthValue() <= 6 ? 0 : 1;
-                                shouldResetCheckbox = currentHalfYear > lastCheckedHalfYear;
-                                break;
-                            case YEARLY:
-                                // Yearly redemptions are ONLY reset by the year rollover logic (Step 1).
-                                // No intra-year reset.
-                                shouldResetCheckbox = false;
-                                break;
-                        }
-                    } else {
-                        // If lastCheckedDate is from a previous year, and it wasn't cleared by year rollover yet,
-                        // ensure it's unchecked and its completedPeriods are cleared now.
-                        shouldResetCheckbox = true; // Force uncheck
-                        if (!redemption.getCompletedPeriodsThisYear().isEmpty()) {
-                            redemption.getCompletedPeriodsThisYear().clear();
-                            dataChanged = true;
-                        }
-                    }
+                // Sum amounts for all completed periods from the *previous* year
+                previousYearTotalForCard += redemption.getAmount()
+                        * redemption.getCompletedPeriodsThisYear().size(rolloverYear);
+                // Periods checked off in the new year before the rollover locked the card are kept
+                redemption.getCompletedPeriodsThisYear().removeYearsThrough(rolloverYear);
+                int firstYear = redemption.getCompletedPeriodsThisYear().firstYear();
+                if (firstYear != -1) {
+                    firstYearLeft.accumulateAndGet(firstYear, Math::min);
                 }
+            }
+            // Save this card's total for the previous year
+            card.getYearlyReimbursementSummaries().put(rolloverYear, previousYearTotalForCard);
+            totals.recompute(card); // Cleared period sets drop out of the running totals
+            changes.add(ChangeRecord.putCard(card));
+        }
+        return changes;
+    }
 
-                if (shouldResetCheckbox && redemption.isChecked()) {
-                    redemption.setChecked(false);
-                    redemption.setLastCheckedDate(null); // Clear last checked date after reset
-                    dataChanged = true;
+    private List<ChangeRecord> uncheckDue(List<String> redemptionIds, Set<String> lockedCardIds, LocalDate now) {
+        List<ChangeRecord> changes = new ArrayList<>();
+        for (String redemptionId : redemptionIds) {
+            index.redemptionRef(redemptionId).ifPresent(ref -> {
+                CreditCard card = ref.card();
+                Redemption redemption = ref.redemption();
+                // Deleted and re-added elsewhere, or re-checked in a new period, since it was polled
+                if (!lockedCardIds.contains(card.getId()) || !redemption.isChecked()
+                        || isBeforeBoundary(redemption, now)) {
+                    return;
                 }
-            }
+                redemption.setChecked(false);
+                redemption.setLastCheckedDate(null); // Clear last checked date after reset
+                outstandingCredits.update(card.getId(), redemption, now);
+                changes.add(ChangeRecord.putRedemption(card.getId(), redemption));
+            });
+        }
+        return changes;
+    }
+
+    private static boolean isBeforeBoundary(Redemption redemption, LocalDate now) {
+        if (redemption.getLastCheckedDate() == null) {
+            return false;
         }
+        LocalDate boundary = RolloverSchedule.nextBoundary(redemption.getFrequency(), redemption.getLastCheckedDate());
+        return boundary != null && now.isBefore(boundary);
+    }
 
-        if (dataChanged) {
-            dataManager.saveData(creditCards);
+    private static <T> List<ChangeRecord> inParallelChunks(List<T> items, Function<List<T>, List<ChangeRecord>> work) {
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        List<List<T>> chunks = new ArrayList<>();
+        for (int start = 0; start < items.size(); start += ROLLOVER_CHUNK_SIZE) {
+            chunks.add(items.subList(start, Math.min(items.size(), start + ROLLOVER_CHUNK_SIZE)));
         }
+        if (chunks.size() == 1) {
+            return work.apply(chunks.get(0));
+        }
+        return chunks.parallelStream().flatMap(chunk -> work.apply(chunk).stream()).toList();
     }
 
     /**
-     * Calculates the total reimbursement amount for the current calendar year.
+     * Returns the total reimbursement amount for the current calendar year from the running total.
      * @return The total reimbursement amount for the current year.
      */
     public double getCurrentYearReimbursementTotal() {
-        double total = 0.0;
-        int currentCalendarYear = LocalDate.now().getYear();
+        return totals.currentYearTotal();
+    }
 
-        for (CreditCard card : creditCards) {
-            if (card.getRedemptions() != null) {
-                for (Redemption redemption : card.getRedemptions()) {
-                    // Sum the amount for each period recorded in the completedPeriodsThisYear set.
-                    // The set itself will only contain entries for the current year due to the resetRedemptions logic.
-                    total += redemption.getAmount() * redemption.getCompletedPeriodsThisYear().size();
-                }
+    /**
+     * Value captured per month, from the completion history's monthly rollup.
+     */
+    public List<CompletionHistory.MonthlyCapture> getCapturedByMonth(YearMonth from, YearMonth to) {
+        return history.capturedByMonth(from, to);
+    }
+
+    /**
+     * Value captured per card, highest first.
+     * @param year The year to report, or null for all years.
+     */
+    public List<CompletionHistory.CardCapture> getCapturedByCard(Integer year) {
+        return history.capturedByCard(year, id -> index.card(id).map(CreditCard::getName).orElse(null));
+    }
+
+    public List<CompletionHistory.Capture> getCaptureByFrequency(int year) {
+        return history.captureByFrequency(year, LocalDate.now());
+    }
+
+    public List<CompletionHistory.Capture> getCaptureByYear(int fromYear, int toYear) {
+        return history.captureByYear(fromYear, toYear, LocalDate.now());
+    }
+
+    /**
+     * The {@code limit} unchecked credits that expire soonest, within {@code withinDays} days from today (0 is today
+     * only), with the count and value of every credit expiring in that window. Reads the outstanding-credits index,
+     * so it does not scan the portfolio.
+     */
+    public OutstandingCredits.Expiring getExpiringCredits(int limit, int withinDays) {
+        LocalDate today = LocalDate.now();
+        return outstandingCredits.expiring(today, today.plusDays(withinDays), limit,
+                id -> index.card(id).map(CreditCard::getName).orElse(null));
+    }
+
+    public List<CompletionHistory.Completion> getCompletions(String cardId) {
+        return history.completions(cardId);
+    }
+
+    /**
+     * Compares every card's running total, and the global total, against a full recompute. Drifted card totals are
+     * corrected in place. Each card is checked under its own lock; the global comparison is only exact when no
+     * mutations run concurrently.
+     */
+    public ReimbursementTotals.ConsistencyReport verifyReimbursementTotals() {
+        List<String> mismatched = new ArrayList<>();
+        double recomputedTotal = 0.0;
+        for (CreditCard card : index.cards()) {
+            boolean consistent = locks.withCardLock(card.getId(), () -> totals.verify(card));
+            if (!consistent) {
+                mismatched.add(card.getId());
             }
+            recomputedTotal += ReimbursementTotals.computeCardTotal(card);
+        }
+        return new ReimbursementTotals.ConsistencyReport(totals.currentYearTotal(), recomputedTotal, mismatched);
+    }
+
+    private static String encodeCursor(long sequence) {
+        return Long.toString(sequence, Character.MAX_RADIX);
+    }
+
+    private static long decodeCursor(String cursor) {
+        try {
+            return Long.parseLong(cursor, Character.MAX_RADIX);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Publishes changes already applied in memory as a new dataset version, then hands them to the repository.
+     */
+    private void persist(List<ChangeRecord> changes) {
+        long version = changeFeed.publish(changes);
+        for (ChangeRecord change : changes) {
+            index.stampVersion(change.getCardId(), version);
+        }
+        repository.persist(changes, this::snapshot);
+    }
+
+    private void persist(ChangeRecord change) {
+        persist(List.of(change));
+    }
+
+    private List<CreditCard> snapshot() {
+        return new ArrayList<>(index.cards());
+    }
+
+    /**
+     * Swaps a card's collections for concurrent ones, so it can be read while another thread holds its lock.
+     */
+    private void prepareForConcurrentAccess(CreditCard card) {
+        List<Redemption> redemptions = new CopyOnWriteArrayList<>();
+        if (card.getRedemptions() != null) {
+            redemptions.addAll(card.getRedemptions());
+        }
+        for (Redemption redemption : redemptions) {
+            if (redemption.getCompletedPeriodsThisYear() == null) {
+                redemption.setCompletedPeriodsThisYear(new PeriodSet()); // Period sets are already thread-safe
+            }
+        }
+        card.setRedemptions(redemptions);
+        ConcurrentHashMap<Integer, Double> summaries = new ConcurrentHashMap<>();
+        if (card.getYearlyReimbursementSummaries() != null) {
+            summaries.putAll(card.getYearlyReimbursementSummaries());
         }
-        return total;
+        card.setYearlyReimbursementSummaries(summaries);
     }
 }
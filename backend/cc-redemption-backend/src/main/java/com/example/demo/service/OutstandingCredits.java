@@ -0,0 +1,153 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Redemption;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The unchecked redemptions, ordered by the last day of their current period: the counterpart of
+ * {@link RolloverSchedule}, which holds the checked ones. A running count and value per expiry date make the value
+ * at risk before a date cost one step per distinct date (a handful, since periods end on month boundaries) rather
+ * than one per redemption.
+ * <p>
+ * Unchecked redemptions get no event when their period ends, so entries whose date has passed are moved to their
+ * new period when the index is next queried. Each entry moves at most once per period.
+ */
+public class OutstandingCredits {
+
+    /**
+     * An unchecked redemption and the last day it can still be used in its current period.
+     */
+    public record Credit(String cardId, String cardName, String redemptionId, String name,
+                         Redemption.Frequency frequency, double amount, LocalDate expiresOn) {
+
+        private Credit expiringOn(LocalDate date) {
+            return new Credit(cardId, cardName, redemptionId, name, frequency, amount, date);
+        }
+    }
+
+    /**
+     * The soonest-expiring credits up to some date, with the count and total value of all credits expiring by then.
+     */
+    public record Expiring(List<Credit> credits, int count, double valueAtRisk) {
+    }
+
+    private static final Comparator<Credit> SOONEST_FIRST = Comparator.comparing(Credit::expiresOn)
+            .thenComparing(Comparator.comparingDouble(Credit::amount).reversed())
+            .thenComparing(Credit::redemptionId);
+
+    private record Total(int count, double value) {
+        Total plus(Total other) {
+            return new Total(count + other.count, value + other.value);
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeMap<Credit, Credit> creditsByExpiry = new TreeMap<>(SOONEST_FIRST);
+    private final Map<String, Credit> creditsByRedemption = new HashMap<>();
+    private final TreeMap<LocalDate, Total> totalsByExpiry = new TreeMap<>();
+
+    /**
+     * The last day of the period containing {@code date}, or null if the frequency is unknown.
+     */
+    public static LocalDate expiresOn(Redemption.Frequency frequency, LocalDate date) {
+        LocalDate boundary = RolloverSchedule.nextBoundary(frequency, date);
+        return boundary == null ? null : boundary.minusDays(1);
+    }
+
+    /**
+     * Tracks the redemption if it is unchecked and has a frequency, or stops tracking it otherwise.
+     */
+    public void update(String cardId, Redemption redemption, LocalDate today) {
+        LocalDate expiresOn = redemption.isChecked() ? null : expiresOn(redemption.getFrequency(), today);
+        lock.lock();
+        try {
+            remove(redemption.getId());
+            if (expiresOn != null) {
+                add(new Credit(cardId, null, redemption.getId(), redemption.getName(), redemption.getFrequency(),
+                        redemption.getAmount(), expiresOn));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(String redemptionId) {
+        lock.lock();
+        try {
+            Credit credit = creditsByRedemption.remove(redemptionId);
+            if (credit != null) {
+                creditsByExpiry.remove(credit);
+                addToTotal(credit, -1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The first {@code limit} credits expiring on or before {@code until}, soonest first and the most valuable first
+     * within a day, and the count and value of every credit expiring by then.
+     * @param cardNames Looks up the card names of the credits returned.
+     */
+    public Expiring expiring(LocalDate today, LocalDate until, int limit, Function<String, String> cardNames) {
+        lock.lock();
+        try {
+            moveToCurrentPeriod(today);
+            List<Credit> credits = new ArrayList<>(Math.min(limit, creditsByExpiry.size()));
+            for (Credit credit : creditsByExpiry.keySet()) {
+                if (credits.size() == limit || credit.expiresOn().isAfter(until)) {
+                    break;
+                }
+                credits.add(new Credit(credit.cardId(), cardNames.apply(credit.cardId()), credit.redemptionId(),
+                        credit.name(), credit.frequency(), credit.amount(), credit.expiresOn()));
+            }
+            Total atRisk = new Total(0, 0);
+            for (Total total : totalsByExpiry.headMap(until, true).values()) {
+                atRisk = atRisk.plus(total);
+            }
+            return new Expiring(credits, atRisk.count(), atRisk.value());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return creditsByRedemption.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void moveToCurrentPeriod(LocalDate today) {
+        Map.Entry<Credit, Credit> first;
+        while ((first = creditsByExpiry.firstEntry()) != null && first.getKey().expiresOn().isBefore(today)) {
+            Credit expired = first.getKey();
+            remove(expired.redemptionId());
+            add(expired.expiringOn(expiresOn(expired.frequency(), today)));
+        }
+    }
+
+    private void add(Credit credit) {
+        creditsByRedemption.put(credit.redemptionId(), credit);
+        creditsByExpiry.put(credit, credit);
+        addToTotal(credit, 1);
+    }
+
+    private void addToTotal(Credit credit, int sign) {
+        totalsByExpiry.merge(credit.expiresOn(), new Total(sign, sign * credit.amount()), (current, change) -> {
+            Total updated = current.plus(change);
+            return updated.count() == 0 ? null : updated; // Drops the date, and any rounding left in its value
+        });
+    }
+}
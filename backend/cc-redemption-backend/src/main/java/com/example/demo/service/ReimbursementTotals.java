@@ -0,0 +1,89 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.Redemption;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Running current-year reimbursement totals, kept per card (in {@link CreditCard#getCurrentYearTotal()}) and across
+ * the whole portfolio. Totals are moved by deltas as redemptions are checked, unchecked, added or deleted, so reads
+ * never walk the redemptions. All per-card methods must be called while holding that card's lock.
+ */
+public class ReimbursementTotals {
+
+    private static final double TOLERANCE = 0.005;
+
+    private final DoubleAdder total = new DoubleAdder();
+
+    /**
+     * Result of comparing the running totals against a full recompute.
+     * @param mismatchedCardIds Cards whose running total had drifted; these have been corrected.
+     */
+    public record ConsistencyReport(double runningTotal, double recomputedTotal, List<String> mismatchedCardIds) {
+        public boolean isConsistent() {
+            return mismatchedCardIds.isEmpty() && Math.abs(runningTotal - recomputedTotal) < TOLERANCE;
+        }
+    }
+
+    public void rebuild(Collection<CreditCard> cards) {
+        total.reset();
+        cards.forEach(this::track);
+    }
+
+    /**
+     * Starts counting a card that was just added: its total is computed once and added to the global total.
+     */
+    public void track(CreditCard card) {
+        double cardTotal = computeCardTotal(card);
+        card.setCurrentYearTotal(cardTotal);
+        total.add(cardTotal);
+    }
+
+    public void untrack(CreditCard card) {
+        total.add(-card.getCurrentYearTotal());
+    }
+
+    public void adjust(CreditCard card, double delta) {
+        card.setCurrentYearTotal(card.getCurrentYearTotal() + delta);
+        total.add(delta);
+    }
+
+    /**
+     * Recomputes one card after a change that touched many of its redemptions at once (an update or a year
+     * rollover) and moves the global total by the difference.
+     */
+    public void recompute(CreditCard card) {
+        adjust(card, computeCardTotal(card) - card.getCurrentYearTotal());
+    }
+
+    public double currentYearTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Checks one card's running total against a full recompute and corrects it if it has drifted.
+     * @return Whether the running total was already correct.
+     */
+    public boolean verify(CreditCard card) {
+        double difference = computeCardTotal(card) - card.getCurrentYearTotal();
+        if (Math.abs(difference) < TOLERANCE) {
+            return true;
+        }
+        adjust(card, difference);
+        return false;
+    }
+
+    public static double computeCardTotal(CreditCard card) {
+        double cardTotal = 0.0;
+        if (card.getRedemptions() != null) {
+            for (Redemption redemption : card.getRedemptions()) {
+                // The set only contains entries for the current year due to the resetRedemptions logic
+                cardTotal += redemption.getAmount() * redemption.getCompletedPeriodsThisYear().size();
+            }
+        }
+        return cardTotal;
+    }
+}
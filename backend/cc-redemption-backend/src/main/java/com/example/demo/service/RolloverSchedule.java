@@ -0,0 +1,156 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Redemption;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The checked redemptions, ordered by the date their current period ends (the date they have to be unchecked).
+ * Unchecked redemptions are not tracked at all, so finding what is due never scans the portfolio.
+ * <p>
+ * Both indexes change under one lock, so a redemption registered while the due ones are being polled is either
+ * polled or left for the next poll, never lost between the two.
+ */
+public class RolloverSchedule {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeMap<LocalDate, Set<String>> redemptionsByBoundary = new TreeMap<>();
+    private final Map<String, LocalDate> boundaryByRedemption = new HashMap<>();
+    private volatile Runnable earlierBoundaryListener = () -> { };
+
+    /**
+     * The first day of the period after the one containing {@code date}.
+     * @return The boundary date, or null if the frequency is unknown.
+     */
+    public static LocalDate nextBoundary(Redemption.Frequency frequency, LocalDate date) {
+        if (frequency == null) {
+            return null;
+        }
+        LocalDate startOfMonth = date.withDayOfMonth(1);
+        return switch (frequency) {
+            case MONTHLY -> startOfMonth.plusMonths(1);
+            case QUARTERLY -> startOfMonth.withMonth((date.getMonthValue() - 1) / 3 * 3 + 1).plusMonths(3);
+            case BIANNUAL -> startOfMonth.withMonth(date.getMonthValue() <= 6 ? 1 : 7).plusMonths(6);
+            case YEARLY -> LocalDate.of(date.getYear() + 1, 1, 1);
+        };
+    }
+
+    /**
+     * Called whenever a registration moves the earliest boundary forward in time, so a scheduler can re-arm.
+     */
+    public void setEarlierBoundaryListener(Runnable listener) {
+        this.earlierBoundaryListener = listener;
+    }
+
+    /**
+     * Tracks the redemption if it is checked, or stops tracking it if not. A checked redemption without a
+     * last-checked date is due immediately.
+     */
+    public void update(Redemption redemption, LocalDate today) {
+        if (!redemption.isChecked()) {
+            remove(redemption.getId());
+            return;
+        }
+        LocalDate checkedOn = redemption.getLastCheckedDate();
+        LocalDate boundary = checkedOn == null ? today : nextBoundary(redemption.getFrequency(), checkedOn);
+        if (boundary == null) {
+            remove(redemption.getId());
+            return;
+        }
+        boolean earlier;
+        lock.lock();
+        try {
+            LocalDate previous = boundaryByRedemption.put(redemption.getId(), boundary);
+            if (boundary.equals(previous)) {
+                return;
+            }
+            if (previous != null) {
+                removeFromBoundary(previous, redemption.getId());
+            }
+            earlier = redemptionsByBoundary.isEmpty() || boundary.isBefore(redemptionsByBoundary.firstKey());
+            redemptionsByBoundary.computeIfAbsent(boundary, date -> new HashSet<>()).add(redemption.getId());
+        } finally {
+            lock.unlock();
+        }
+        if (earlier) {
+            earlierBoundaryListener.run();
+        }
+    }
+
+    public void remove(String redemptionId) {
+        lock.lock();
+        try {
+            LocalDate boundary = boundaryByRedemption.remove(redemptionId);
+            if (boundary != null) {
+                removeFromBoundary(boundary, redemptionId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns every redemption whose boundary is on or before {@code today}.
+     */
+    public List<String> pollDue(LocalDate today) {
+        List<String> due = new ArrayList<>();
+        lock.lock();
+        try {
+            Map<LocalDate, Set<String>> passed = redemptionsByBoundary.headMap(today, true);
+            for (Set<String> redemptionIds : passed.values()) {
+                redemptionIds.forEach(boundaryByRedemption::remove);
+                due.addAll(redemptionIds);
+            }
+            passed.clear();
+        } finally {
+            lock.unlock();
+        }
+        return due;
+    }
+
+    /**
+     * @return The earliest tracked boundary, or null if nothing is checked.
+     */
+    public LocalDate firstBoundary() {
+        lock.lock();
+        try {
+            return redemptionsByBoundary.isEmpty() ? null : redemptionsByBoundary.firstKey();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return boundaryByRedemption.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            redemptionsByBoundary.clear();
+            boundaryByRedemption.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeFromBoundary(LocalDate boundary, String redemptionId) {
+        Set<String> ids = redemptionsByBoundary.get(boundary);
+        if (ids != null && ids.remove(redemptionId) && ids.isEmpty()) {
+            redemptionsByBoundary.remove(boundary);
+        }
+    }
+}
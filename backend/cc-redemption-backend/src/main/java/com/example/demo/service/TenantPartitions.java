@@ -0,0 +1,414 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.JsonCreditCardRepository;
+import com.example.demo.util.JsonDataManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * One {@link CreditCardService} per tenant, so a single JVM serves many users' portfolios. A tenant's partition is
+ * loaded from {@code <directory>/<tenant>/} on its first request and kept in least-recently-used order. When the
+ * resident partitions exceed the memory budget or the resident count, the least recently used ones that have been
+ * idle for {@code idle-ms} are closed and dropped; their next request loads them again.
+ * <p>
+ * Every request holds its tenant's partition from {@link #acquire} to {@link #release}, and a partition in use is
+ * never evicted however long the request runs, e.g. a large import. Tenants are looked up without a shared lock; only
+ * eviction walks the access order, and it stops at the first partition that has not been idle long enough.
+ * <p>
+ * Partitions are stored as JSON files that are saved in full on every change, with no write-ahead log or
+ * write-behind, so a tenant holds no threads and nothing is lost when it is evicted. Unscoped requests keep going to
+ * the Spring-managed service, which is never evicted and keeps every storage option.
+ */
+@Component
+public class TenantPartitions {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantPartitions.class);
+
+    private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_-]{0,63}");
+
+    // Retained heap, fitted to partitions of 0, 10 and 100 cards; history events are the column entries plus the
+    // completion-day map entry. Redemptions include an outstanding-credit entry (about 120 bytes), as most are
+    // unchecked.
+    private static final long PARTITION_BYTES = 7_400;
+    private static final long CARD_BYTES = 400;
+    private static final long REDEMPTION_BYTES = 480;
+    private static final long HISTORY_EVENT_BYTES = 100;
+
+    /**
+     * Told when a tenant's partition is loaded and after it has been evicted.
+     */
+    public interface Listener {
+        void loaded(String tenant, CreditCardService partition);
+
+        void evicted(String tenant, CreditCardService partition);
+    }
+
+    private static final class Partition {
+        private final String tenant;
+        private final ReentrantLock loadLock = new ReentrantLock(); // Also held while the partition is evicted
+        // Requests using the partition, or -1 once it has been evicted and dropped from the map
+        private final AtomicInteger users = new AtomicInteger();
+        // Key of the partition's entry in the access order
+        private final AtomicLong accessStamp = new AtomicLong();
+        private final AtomicLong estimatedBytes = new AtomicLong();
+        private volatile CreditCardService service;
+        private volatile long lastAccessNanos;
+
+        private Partition(String tenant) {
+            this.tenant = tenant;
+        }
+
+        /**
+         * @return False if the partition has been evicted; look the tenant up again.
+         */
+        private boolean pin() {
+            for (int count = users.get(); count >= 0; count = users.get()) {
+                if (users.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final CreditCardService defaultService;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+    private final Path directory;
+    private final long memoryBudgetBytes;
+    private final int maxResident;
+    private final long idleNanos;
+    private final int changeHistory;
+    private final boolean prettyPrint;
+    private final String format;
+
+    private final ConcurrentHashMap<String, Partition> partitions = new ConcurrentHashMap<>();
+    // Least recently used first; a partition's stale entries are dropped when eviction comes across them
+    private final ConcurrentSkipListMap<Long, Partition> accessOrder = new ConcurrentSkipListMap<>();
+    private final AtomicLong accessClock = new AtomicLong();
+    private final AtomicInteger residentCount = new AtomicInteger();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Counter loads;
+    private final Counter evictions;
+
+    /**
+     * @param memoryBudgetMb Estimated heap the resident partitions may take up before idle ones are evicted.
+     * @param maxResident Resident partitions allowed before idle ones are evicted, whatever their size.
+     * @param idleMs How long a partition must have gone without requests before it can be evicted.
+     * @param changeHistory Change events each partition keeps for subscribers that resume after a disconnect.
+     */
+    public TenantPartitions(CreditCardService defaultService, TaskScheduler taskScheduler,
+                            @Value("${app.tenants.directory:tenants}") String directory,
+                            @Value("${app.tenants.memory-budget-mb:512}") long memoryBudgetMb,
+                            @Value("${app.tenants.max-resident:50000}") int maxResident,
+                            @Value("${app.tenants.idle-ms:60000}") long idleMs,
+                            @Value("${app.tenants.change-history:100}") int changeHistory,
+                            @Value("${app.data.pretty-print:true}") boolean prettyPrint,
+                            @Value("${app.data.format:json}") String format,
+                            MeterRegistry meterRegistry) {
+        this.defaultService = defaultService;
+        this.taskScheduler = taskScheduler;
+        this.meterRegistry = meterRegistry;
+        this.directory = Path.of(directory);
+        this.memoryBudgetBytes = memoryBudgetMb * 1024 * 1024;
+        this.maxResident = Math.max(1, maxResident);
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMs);
+        this.changeHistory = changeHistory;
+        this.prettyPrint = prettyPrint;
+        this.format = format;
+        this.loads = Counter.builder("creditcards.tenants.loads")
+                .description("Tenant partitions loaded from disk")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("creditcards.tenants.evictions")
+                .description("Idle tenant partitions dropped to stay within the memory budget")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.tenants.resident", residentCount, AtomicInteger::get)
+                .description("Tenant partitions held in memory")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.tenants.resident.bytes", residentBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .description("Estimated heap taken up by the resident tenant partitions")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.tenants.cards", this,
+                        partitions -> partitions.residentSum(CreditCardService::getCardCount))
+                .description("Cards in the resident tenant partitions")
+                .register(meterRegistry);
+        Gauge.builder("creditcards.tenants.redemptions", this,
+                        partitions -> partitions.residentSum(CreditCardService::getRedemptionCount))
+                .description("Redemptions in the resident tenant partitions")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Also evicts on a timer, so partitions that grow without new tenants being loaded still respect the budget.
+     */
+    @PostConstruct
+    public void start() {
+        taskScheduler.scheduleWithFixedDelay(this::evictOverBudget,
+                Duration.ofNanos(Math.max(idleNanos, TimeUnit.SECONDS.toNanos(1))));
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Partition partition : partitions.values()) {
+            partition.loadLock.lock();
+            try {
+                partition.users.set(-1);
+                partitions.remove(partition.tenant, partition);
+                if (partition.service != null) {
+                    partition.service.close();
+                }
+            } finally {
+                partition.loadLock.unlock();
+            }
+        }
+        accessOrder.clear();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * The service holding the tenant's portfolio, loading it if it is not resident. The partition may be evicted as
+     * soon as this returns; requests hold it with {@link #acquire} instead.
+     * @param tenant A tenant id, or null for the default portfolio.
+     * @throws IllegalArgumentException if the id is not 1-64 letters, digits, '-' or '_' starting with a letter or
+     *                                  digit.
+     */
+    public CreditCardService get(String tenant) {
+        CreditCardService service = acquire(tenant);
+        release(tenant);
+        return service;
+    }
+
+    /**
+     * Like {@link #get}, but the partition stays resident until the matching {@link #release}.
+     * @throws IllegalArgumentException if the tenant id is invalid; nothing is acquired then.
+     */
+    public CreditCardService acquire(String tenant) {
+        if (tenant == null) {
+            return defaultService;
+        }
+        if (!TENANT_ID.matcher(tenant).matches()) {
+            throw new IllegalArgumentException("Invalid tenant id: " + tenant);
+        }
+        while (true) {
+            Partition partition = partitions.computeIfAbsent(tenant, Partition::new);
+            if (partition.pin()) {
+                recordAccess(partition);
+                CreditCardService service = partition.service;
+                try {
+                    return service != null ? service : load(partition);
+                } catch (RuntimeException e) {
+                    partition.users.decrementAndGet();
+                    throw e;
+                }
+            }
+            // Evicted meanwhile: wait until it is closed, so the next load never shares its files with it
+            partition.loadLock.lock();
+            partition.loadLock.unlock();
+        }
+    }
+
+    /**
+     * Holds the tenant's partition only if it still holds {@code service}, e.g. for a task scheduled on it.
+     * @return True if acquired; release it as for {@link #acquire}.
+     */
+    public boolean acquireIfResident(String tenant, CreditCardService service) {
+        Partition partition = partitions.get(tenant);
+        if (partition == null || !partition.pin()) {
+            return false;
+        }
+        if (partition.service != service) {
+            partition.users.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ends a use of the tenant's partition begun by {@link #acquire}; it counts as idle from now on.
+     */
+    public void release(String tenant) {
+        if (tenant == null) {
+            return;
+        }
+        Partition partition = partitions.get(tenant); // Not evicted, as it is in use
+        CreditCardService service = partition.service;
+        if (service != null) {
+            // The request may have grown or shrunk the partition
+            long bytes = estimatedBytes(service);
+            residentBytes.addAndGet(bytes - partition.estimatedBytes.getAndSet(bytes));
+        }
+        recordAccess(partition);
+        partition.users.decrementAndGet();
+    }
+
+    /**
+     * Marks a tenant's partition as in use without a request, e.g. while it has open change streams.
+     */
+    public void touch(String tenant) {
+        Partition partition = partitions.get(tenant);
+        if (partition != null && partition.users.get() >= 0) {
+            recordAccess(partition);
+        }
+    }
+
+    private void recordAccess(Partition partition) {
+        partition.lastAccessNanos = System.nanoTime();
+        long stamp = accessClock.incrementAndGet();
+        accessOrder.put(stamp, partition);
+        accessOrder.remove(partition.accessStamp.getAndSet(stamp), partition);
+    }
+
+    private CreditCardService load(Partition partition) {
+        partition.loadLock.lock();
+        try {
+            if (partition.service != null) {
+                return partition.service;
+            }
+            long start = System.nanoTime();
+            Path tenantDirectory = directory.resolve(partition.tenant);
+            try {
+                Files.createDirectories(tenantDirectory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not create " + tenantDirectory, e);
+            }
+            JsonDataManager dataManager = new JsonDataManager(tenantDirectory.resolve("creditcards.json").toString(),
+                    false, 0, 0, prettyPrint, format, meterRegistry);
+            // The service's gauges would clash with the default portfolio's and every other tenant's, so its meters
+            // go to a registry of its own with nowhere to publish; the tenants' sizes are summed up here instead
+            CreditCardService service = new CreditCardService(new JsonCreditCardRepository(dataManager),
+                    false, 0, 0, changeHistory, tenantDirectory.resolve("creditcards-history.bin").toString(),
+                    new CompositeMeterRegistry());
+            service.resetRedemptions(); // Small enough to catch up before the first response
+            partition.estimatedBytes.set(estimatedBytes(service));
+            residentBytes.addAndGet(partition.estimatedBytes.get());
+            residentCount.incrementAndGet();
+            partition.service = service;
+            loads.increment();
+            log.debug("Loaded tenant {} with {} redemptions in {} ms", partition.tenant, service.getRedemptionCount(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            listeners.forEach(listener -> listener.loaded(partition.tenant, service));
+        } finally {
+            partition.loadLock.unlock();
+        }
+        evictOverBudget();
+        return partition.service;
+    }
+
+    /**
+     * Drops least recently used, idle partitions until the rest fit the memory budget and the resident count.
+     * Partitions in use are skipped, and the walk ends at the first one used within {@code idle-ms}, as every later
+     * one was used more recently still. Their changes are already on disk, so closing them only releases the history
+     * file.
+     */
+    void evictOverBudget() {
+        if (!evictionLock.tryLock()) {
+            return; // Another thread is already evicting
+        }
+        int evicted = 0;
+        try {
+            long now = System.nanoTime();
+            Iterator<Map.Entry<Long, Partition>> leastRecentFirst = accessOrder.entrySet().iterator();
+            while ((residentBytes.get() > memoryBudgetBytes || residentCount.get() > maxResident)
+                    && leastRecentFirst.hasNext()) {
+                Map.Entry<Long, Partition> entry = leastRecentFirst.next();
+                Partition partition = entry.getValue();
+                if (partition.accessStamp.get() != entry.getKey()) {
+                    leastRecentFirst.remove(); // Left behind by concurrent accesses
+                    continue;
+                }
+                if (now - partition.lastAccessNanos < idleNanos) {
+                    break;
+                }
+                CreditCardService service = evict(partition);
+                if (partition.users.get() < 0) {
+                    leastRecentFirst.remove();
+                }
+                if (service != null) {
+                    evicted++;
+                    evictions.increment();
+                    listeners.forEach(listener -> listener.evicted(partition.tenant, service));
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle tenant partitions", evicted);
+        }
+    }
+
+    /**
+     * Closes the partition and drops it from the map, unless it is in use or still loading.
+     * @return The closed service, or null if there was none, e.g. after a failed load.
+     */
+    private CreditCardService evict(Partition partition) {
+        if (!partition.loadLock.tryLock()) {
+            return null; // Loading
+        }
+        try {
+            if (!partition.users.compareAndSet(0, -1)) {
+                return null;
+            }
+            partitions.remove(partition.tenant, partition);
+            CreditCardService service = partition.service;
+            if (service == null) {
+                return null;
+            }
+            residentBytes.addAndGet(-partition.estimatedBytes.getAndSet(0));
+            residentCount.decrementAndGet();
+            service.close();
+            return service;
+        } finally {
+            partition.loadLock.unlock();
+        }
+    }
+
+    private long residentSum(ToLongFunction<CreditCardService> value) {
+        long sum = 0;
+        for (Partition partition : partitions.values()) {
+            CreditCardService service = partition.service;
+            if (service != null && partition.users.get() >= 0) {
+                sum += value.applyAsLong(service);
+            }
+        }
+        return sum;
+    }
+
+    private static long estimatedBytes(CreditCardService service) {
+        return PARTITION_BYTES + service.getCardCount() * CARD_BYTES
+                + service.getRedemptionCount() * REDEMPTION_BYTES + service.getHistorySize() * HISTORY_EVENT_BYTES;
+    }
+}
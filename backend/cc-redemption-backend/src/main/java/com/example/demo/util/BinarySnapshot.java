@@ -0,0 +1,284 @@
+package com.example.demo.util;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of the portfolio, read through memory mappings instead of being parsed as text. The file is
+ * mapped in segments of up to 1 GB, so a snapshot may be larger than a single mapping allows.
+ * <p>
+ * Layout (big-endian): a 24-byte header of magic {@code "CCSB"}, format version (short), reserved (short),
+ * card count (int), payload length (long) and the CRC32C of the payload (int), followed by the payload. Each card is
+ * its id, name and description, its yearly summaries as (year, total) pairs, and its redemptions: id, name, amount,
+ * frequency ordinal, checked flag, last-checked epoch day and the packed {@link PeriodSet} periods. Strings are an
+ * int length (-1 for null) followed by UTF-8 bytes. A snapshot whose version is unknown or whose checksum does not
+ * match is rejected as a whole.
+ */
+public final class BinarySnapshot {
+
+    private static final int MAGIC = 0x43435342; // "CCSB"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int SEGMENT_SIZE = 1 << 30;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final Redemption.Frequency[] FREQUENCIES = Redemption.Frequency.values();
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Writes the cards to a file next to {@code target}, forces it to disk and renames it over the target.
+     */
+    public static void write(List<CreditCard> cards, Path target) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            CRC32C checksum = new CRC32C();
+            CountingOutputStream counter = new CountingOutputStream(Channels.newOutputStream(channel));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(counter, checksum), 1 << 16));
+            for (CreditCard card : cards) {
+                writeCard(out, card);
+            }
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putShort(VERSION)
+                    .putShort((short) 0)
+                    .putInt(cards.size())
+                    .putLong(counter.count)
+                    .putInt((int) checksum.getValue())
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps the snapshot, verifies its checksum and decodes every card.
+     * @throws IOException if the file is not a snapshot of a known version, or is truncated or corrupt.
+     */
+    public static List<CreditCard> read(Path source) throws IOException {
+        return read(source, SEGMENT_SIZE);
+    }
+
+    static List<CreditCard> read(Path source, int segmentSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a credit card snapshot: " + source);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a credit card snapshot: " + source);
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + source);
+            }
+            header.getShort();
+            int cardCount = header.getInt();
+            long payloadLength = header.getLong();
+            int expectedChecksum = header.getInt();
+            if (payloadLength != size - HEADER_SIZE) {
+                throw new IOException("Truncated snapshot " + source);
+            }
+            CRC32C checksum = new CRC32C();
+            for (long position = HEADER_SIZE; position < size; position += segmentSize) {
+                checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(segmentSize, size - position)));
+            }
+            if ((int) checksum.getValue() != expectedChecksum) {
+                throw new IOException("Checksum mismatch in snapshot " + source);
+            }
+            Segments in = new Segments(channel, HEADER_SIZE, size, segmentSize);
+            List<CreditCard> cards = new ArrayList<>(cardCount);
+            try {
+                for (int i = 0; i < cardCount; i++) {
+                    cards.add(readCard(in));
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed snapshot " + source, e);
+            }
+            return cards;
+        }
+    }
+
+    private static void writeCard(DataOutputStream out, CreditCard card) throws IOException {
+        writeString(out, card.getId());
+        writeString(out, card.getName());
+        writeString(out, card.getDescription());
+        Map<Integer, Double> summaries = card.getYearlyReimbursementSummaries() == null
+                ? Map.of()
+                : card.getYearlyReimbursementSummaries();
+        out.writeInt(summaries.size());
+        for (Map.Entry<Integer, Double> summary : summaries.entrySet()) {
+            out.writeInt(summary.getKey());
+            out.writeDouble(summary.getValue());
+        }
+        List<Redemption> redemptions = card.getRedemptions() == null ? List.of() : card.getRedemptions();
+        out.writeInt(redemptions.size());
+        for (Redemption redemption : redemptions) {
+            writeString(out, redemption.getId());
+            writeString(out, redemption.getName());
+            out.writeDouble(redemption.getAmount());
+            out.writeByte(redemption.getFrequency() == null ? -1 : redemption.getFrequency().ordinal());
+            out.writeBoolean(redemption.isChecked());
+            out.writeInt(redemption.getLastCheckedDate() == null
+                    ? NO_DATE
+                    : (int) redemption.getLastCheckedDate().toEpochDay());
+            int[] periods = redemption.getCompletedPeriodsThisYear() == null
+                    ? new int[0]
+                    : redemption.getCompletedPeriodsThisYear().periods();
+            out.writeInt(periods.length);
+            for (int period : periods) {
+                out.writeInt(period);
+            }
+        }
+    }
+
+    private static CreditCard readCard(Segments in) throws IOException {
+        String id = readString(in);
+        String name = readString(in);
+        String description = readString(in);
+        int summaryCount = in.getInt();
+        Map<Integer, Double> summaries = new HashMap<>();
+        for (int i = 0; i < summaryCount; i++) {
+            summaries.put(in.getInt(), in.getDouble());
+        }
+        int redemptionCount = in.getInt();
+        List<Redemption> redemptions = new ArrayList<>(redemptionCount);
+        for (int i = 0; i < redemptionCount; i++) {
+            String redemptionId = readString(in);
+            String redemptionName = readString(in);
+            double amount = in.getDouble();
+            byte frequency = in.get();
+            boolean checked = in.get() != 0;
+            int lastChecked = in.getInt();
+            PeriodSet periods = new PeriodSet();
+            int periodCount = in.getInt();
+            for (int p = 0; p < periodCount; p++) {
+                periods.add(in.getInt());
+            }
+            redemptions.add(new Redemption(redemptionId, redemptionName, amount,
+                    frequency < 0 ? null : FREQUENCIES[frequency], checked,
+                    lastChecked == NO_DATE ? null : LocalDate.ofEpochDay(lastChecked), periods));
+        }
+        return new CreditCard(id, name, description, redemptions, summaries, 0.0);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(Segments in) throws IOException {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a file through a sliding window of mappings, as one mapping cannot cover more than 2 GB. A value that
+     * straddles the end of the window is read from a new window starting at it.
+     */
+    private static final class Segments {
+        private final FileChannel channel;
+        private final long size;
+        private final int segmentSize;
+        private long windowStart;
+        private ByteBuffer window;
+
+        private Segments(FileChannel channel, long start, long size, int segmentSize) {
+            this.channel = channel;
+            this.size = size;
+            this.segmentSize = segmentSize;
+            this.windowStart = start;
+            this.window = ByteBuffer.allocate(0);
+        }
+
+        private ByteBuffer require(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                windowStart += window.position();
+                if (bytes < 0 || size - windowStart < bytes) {
+                    throw new BufferUnderflowException();
+                }
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(Math.max(segmentSize, bytes), size - windowStart));
+            }
+            return window;
+        }
+
+        byte get() throws IOException {
+            return require(1).get();
+        }
+
+        int getInt() throws IOException {
+            return require(Integer.BYTES).getInt();
+        }
+
+        double getDouble() throws IOException {
+            return require(Double.BYTES).getDouble();
+        }
+
+        void get(byte[] bytes) throws IOException {
+            require(bytes.length).get(bytes);
+        }
+    }
+
+    private static final class CountingOutputStream extends java.io.FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.demo.util;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.Redemption;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single persisted mutation. Records carry the full new state of the card or redemption they touch,
+ * so replaying the same record twice leaves the data unchanged.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChangeRecord {
+    private Type type;
+    private String cardId;
+    private String redemptionId;
+    private CreditCard card;
+    private Redemption redemption;
+
+    public enum Type {
+        PUT_CARD,
+        DELETE_CARD,
+        PUT_REDEMPTION,
+        DELETE_REDEMPTION
+    }
+
+    public static ChangeRecord putCard(CreditCard card) {
+        return new ChangeRecord(Type.PUT_CARD, card.getId(), null, card, null);
+    }
+
+    public static ChangeRecord deleteCard(String cardId) {
+        return new ChangeRecord(Type.DELETE_CARD, cardId, null, null, null);
+    }
+
+    public static ChangeRecord putRedemption(String cardId, Redemption redemption) {
+        return new ChangeRecord(Type.PUT_REDEMPTION, cardId, redemption.getId(), null, redemption);
+    }
+
+    public static ChangeRecord deleteRedemption(String cardId, String redemptionId) {
+        return new ChangeRecord(Type.DELETE_REDEMPTION, cardId, redemptionId, null, null);
+    }
+
+    /**
+     * Applies this record to a card map keyed by id (in insertion order).
+     * Records that refer to a card which no longer exists are ignored.
+     */
+    public void applyTo(Map<String, CreditCard> cardsById) {
+        switch (type) {
+            case PUT_CARD -> cardsById.put(cardId, card);
+            case DELETE_CARD -> cardsById.remove(cardId);
+            case PUT_REDEMPTION -> {
+                CreditCard target = cardsById.get(cardId);
+                if (target != null && target.getRedemptions() != null) {
+                    List<Redemption> redemptions = target.getRedemptions();
+                    int index = 0;
+                    while (index < redemptions.size() && !redemptions.get(index).getId().equals(redemptionId)) {
+                        index++;
+                    }
+                    if (index < redemptions.size()) {
+                        redemptions.set(index, redemption);
+                    } else {
+                        redemptions.add(redemption);
+                    }
+                }
+            }
+            case DELETE_REDEMPTION -> {
+                CreditCard target = cardsById.get(cardId);
+                if (target != null && target.getRedemptions() != null) {
+                    target.getRedemptions().removeIf(red -> red.getId().equals(redemptionId));
+                }
+            }
+        }
+    }
+}
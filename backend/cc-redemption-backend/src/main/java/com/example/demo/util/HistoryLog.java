@@ -0,0 +1,202 @@
+package com.example.demo.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only binary file behind the completion history. Cards and redemptions are written once and then referred
+ * to by their position, so a completion costs 22 bytes on disk. Appends go to the OS without fsync; the file is
+ * forced on close, so a crash can lose the last few records but never corrupts earlier ones.
+ */
+public class HistoryLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryLog.class);
+
+    private static final byte CARD = 1;
+    private static final byte REDEMPTION = 2;
+    private static final byte REMOVED = 3;
+    private static final byte EVENT = 4;
+
+    /**
+     * Receives the records of the log in the order they were appended.
+     */
+    public interface Visitor {
+        void card(String cardId);
+
+        /**
+         * @param index The redemption's position; equal to the number of redemptions so far for a new one, lower
+         *              when an existing redemption's frequency or amount changed.
+         */
+        void redemption(int index, String redemptionId, int cardIndex, byte frequency, double amount, int fromDay);
+
+        void removed(int redemptionIndex, int day);
+
+        void event(int redemptionIndex, int period, int day, byte frequency, double amount);
+    }
+
+    private final Path path;
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+    private long validLength = -1;
+
+    public HistoryLog(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Replays every complete record. A torn or unknown tail (e.g. from a crash mid-append) ends the replay and is
+     * cut off before the next append.
+     */
+    public void replay(Visitor visitor) throws IOException {
+        lock.lock();
+        try {
+            validLength = 0;
+            if (!Files.exists(path)) {
+                return;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+                long position = 0;
+                while (true) {
+                    int type = in.read();
+                    if (type == -1) {
+                        break;
+                    }
+                    switch (type) {
+                        case CARD -> {
+                            byte[] cardId = readString(in);
+                            visitor.card(new String(cardId, StandardCharsets.UTF_8));
+                            position += 3 + cardId.length;
+                        }
+                        case REDEMPTION -> {
+                            int index = in.readInt();
+                            int cardIndex = in.readInt();
+                            byte frequency = in.readByte();
+                            double amount = in.readDouble();
+                            int fromDay = in.readInt();
+                            byte[] redemptionId = readString(in);
+                            visitor.redemption(index, new String(redemptionId, StandardCharsets.UTF_8), cardIndex,
+                                    frequency, amount, fromDay);
+                            position += 24 + redemptionId.length;
+                        }
+                        case REMOVED -> {
+                            visitor.removed(in.readInt(), in.readInt());
+                            position += 9;
+                        }
+                        case EVENT -> {
+                            int redemptionIndex = in.readInt();
+                            int period = in.readInt();
+                            int day = in.readInt();
+                            byte frequency = in.readByte();
+                            double amount = in.readDouble();
+                            visitor.event(redemptionIndex, period, day, frequency, amount);
+                            position += 22;
+                        }
+                        default -> {
+                            log.warn("Unknown record type {} in {} at byte {}; ignoring the rest", type, path, position);
+                            return;
+                        }
+                    }
+                    validLength = position;
+                }
+            } catch (EOFException e) {
+                log.warn("History log {} ends in a torn record at byte {}; it will be cut off", path, validLength);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void appendCard(String cardId) throws IOException {
+        byte[] id = cardId.getBytes(StandardCharsets.UTF_8);
+        write(ByteBuffer.allocate(3 + id.length).put(CARD).putShort((short) id.length).put(id));
+    }
+
+    public void appendRedemption(int index, String redemptionId, int cardIndex, byte frequency, double amount,
+                                 int fromDay) throws IOException {
+        byte[] id = redemptionId.getBytes(StandardCharsets.UTF_8);
+        write(ByteBuffer.allocate(24 + id.length).put(REDEMPTION).putInt(index).putInt(cardIndex).put(frequency)
+                .putDouble(amount).putInt(fromDay).putShort((short) id.length).put(id));
+    }
+
+    public void appendRemoved(int redemptionIndex, int day) throws IOException {
+        write(ByteBuffer.allocate(9).put(REMOVED).putInt(redemptionIndex).putInt(day));
+    }
+
+    public void appendEvent(int redemptionIndex, int period, int day, byte frequency, double amount)
+            throws IOException {
+        write(ByteBuffer.allocate(22).put(EVENT).putInt(redemptionIndex).putInt(period).putInt(day).put(frequency)
+                .putDouble(amount));
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        lock.lock();
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                if (validLength < 0) {
+                    validLength = channel.size();
+                }
+                channel.truncate(validLength);
+                channel.position(validLength);
+            }
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                cutBack();
+                throw e;
+            }
+            // The record is complete, and stays when the log is reopened
+            validLength = channel.position();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops a partly written record, so the next append does not follow a torn one.
+     */
+    private void cutBack() {
+        try {
+            channel.truncate(validLength);
+            channel.position(validLength);
+        } catch (IOException e) {
+            log.warn("Could not cut a partly written record off the history log {}", path, e);
+        }
+    }
+
+    private static byte[] readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -1,63 +1,284 @@
 package com.example.demo.util;
 
 import com.example.demo.model.CreditCard;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 @Component
 public class JsonDataManager {
 
-    @Value("${app.data.filepath:creditcards.json}")
-    private String dataFilePath;
+    private static final Logger log = LoggerFactory.getLogger(JsonDataManager.class);
 
-    private final ObjectMapper objectMapper = new ObjectMapper()
-            .enable(SerializationFeature.INDENT_OUTPUT)
+    private final String dataFilePath;
+    private final Path snapshotPath;
+    private final boolean binary;
+    private final int walCompactAfter;
+
+    // Shared by every manager, so tenant partitions do not each build their own serializer caches
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
             .registerModule(new JavaTimeModule()); // Register JavaTimeModule
-    private List<CreditCard> creditCards = new ArrayList<>();
+    private static final ObjectReader cardReader = objectMapper.readerFor(CreditCard.class);
+    private final ObjectWriter cardWriter;
+    private final WriteAheadLog writeAheadLog;
+    private final Timer loadTimer;
+    private final Timer saveTimer;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    @Autowired
+    public JsonDataManager(@Value("${app.data.filepath:creditcards.json}") String dataFilePath,
+                           @Value("${app.data.wal.enabled:false}") boolean walEnabled,
+                           @Value("${app.data.wal.sync-interval-ms:50}") long walSyncIntervalMs,
+                           @Value("${app.data.wal.compact-after:10000}") int walCompactAfter,
+                           @Value("${app.data.pretty-print:true}") boolean prettyPrint,
+                           @Value("${app.data.format:json}") String format,
+                           MeterRegistry meterRegistry) {
+        if (!"json".equalsIgnoreCase(format) && !"binary".equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("app.data.format must be json or binary, not " + format);
+        }
+        this.dataFilePath = dataFilePath;
+        this.snapshotPath = Path.of(dataFilePath + ".snap");
+        this.binary = "binary".equalsIgnoreCase(format);
+        ObjectWriter writer = objectMapper.writerFor(CreditCard.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE); // Cards are streamed one at a time
+        this.cardWriter = prettyPrint ? writer.with(SerializationFeature.INDENT_OUTPUT) : writer;
+        this.walCompactAfter = walCompactAfter;
+        this.writeAheadLog = walEnabled
+                ? new WriteAheadLog(Path.of(dataFilePath + ".wal"), objectMapper, walSyncIntervalMs)
+                : null;
+        this.loadTimer = Timer.builder("creditcards.storage.load")
+                .description("Time to read the data file or binary snapshot and replay the write-ahead log")
+                .tag("store", "json")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.saveTimer = Timer.builder("creditcards.storage.save")
+                .description("Time to write a full snapshot of the data file or binary snapshot")
+                .tag("store", "json")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
-    @PostConstruct
-    public void init() {
-        loadData();
+    public JsonDataManager(String dataFilePath, boolean walEnabled, long walSyncIntervalMs, int walCompactAfter,
+                           boolean prettyPrint, String format) {
+        this(dataFilePath, walEnabled, walSyncIntervalMs, walCompactAfter, prettyPrint, format,
+                Metrics.globalRegistry);
+    }
+
+    public JsonDataManager(String dataFilePath, boolean walEnabled, long walSyncIntervalMs, int walCompactAfter,
+                           boolean prettyPrint) {
+        this(dataFilePath, walEnabled, walSyncIntervalMs, walCompactAfter, prettyPrint, "json");
+    }
+
+    public JsonDataManager(String dataFilePath) {
+        this(dataFilePath, false, 0, 0, true);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (writeAheadLog != null) {
+            try {
+                writeAheadLog.close();
+            } catch (IOException e) {
+                log.error("Could not close the write-ahead log of {}", dataFilePath, e);
+            }
+        }
     }
 
+    /**
+     * Loads the last snapshot and, in write-ahead-log mode, replays every change logged since it was taken.
+     * The snapshot is whichever of the JSON file and the binary {@code .snap} file was written last, so switching
+     * {@code app.data.format} in either direction picks up the latest data. A binary snapshot is decoded straight from
+     * memory mappings of up to 1 GB each. The JSON file is read token by token and bound one card at a time, so no
+     * intermediate array or tree of the whole file is ever held next to the resulting list.
+     * Nothing is loaded when the manager is created; its single caller is the repository.
+     * @throws UncheckedIOException if the newest snapshot is unreadable (e.g. it fails its checksum), or the
+     *                              write-ahead log cannot be replayed in full. No older data is loaded in their place,
+     *                              and nothing is cut off the log.
+     */
     public List<CreditCard> loadData() {
-        File file = new File(dataFilePath);
-        if (file.exists() && file.length() > 0) {
+        return loadTimer.record(this::readData);
+    }
+
+    private List<CreditCard> readData() {
+        List<CreditCard> creditCards;
+        if (snapshotIsNewest()) {
             try {
-                creditCards = new ArrayList<>(Arrays.asList(objectMapper.readValue(file, CreditCard[].class)));
+                creditCards = BinarySnapshot.read(snapshotPath);
             } catch (IOException e) {
-                e.printStackTrace();
-                creditCards = new ArrayList<>();
+                // The JSON file is older, and the next save would replace the snapshot with it
+                throw new UncheckedIOException("Could not read the snapshot " + snapshotPath + ", which is newer than "
+                        + dataFilePath + "; repair or remove it to start from the JSON file", e);
             }
         } else {
-            creditCards = new ArrayList<>();
+            creditCards = readJson();
+        }
+        if (writeAheadLog != null) {
+            try {
+                List<ChangeRecord> records = writeAheadLog.readAll();
+                if (!records.isEmpty()) {
+                    Map<String, CreditCard> cardsById = new LinkedHashMap<>();
+                    creditCards.forEach(card -> cardsById.put(card.getId(), card));
+                    records.forEach(record -> record.applyTo(cardsById));
+                    creditCards = new ArrayList<>(cardsById.values());
+                }
+            } catch (IOException e) {
+                // Starting without the logged changes would let the next snapshot overwrite them for good
+                throw new UncheckedIOException("Could not replay the write-ahead log of " + dataFilePath
+                        + "; repair or move it aside to start without the changes it holds", e);
+            }
         }
         return creditCards;
     }
 
+    private boolean snapshotIsNewest() {
+        File snapshot = snapshotPath.toFile();
+        File json = new File(dataFilePath);
+        return snapshot.exists() && (!json.exists() || snapshot.lastModified() >= json.lastModified());
+    }
+
+    private List<CreditCard> readJson() {
+        File file = new File(dataFilePath);
+        if (!file.exists() || file.length() == 0) {
+            return new ArrayList<>();
+        }
+        try (JsonParser parser = objectMapper.createParser(file)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of credit cards in " + dataFilePath);
+            }
+            List<CreditCard> loaded = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                loaded.add(cardReader.readValue(parser));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Unexpected " + parser.currentToken() + " in " + dataFilePath);
+            }
+            return loaded;
+        } catch (IOException e) {
+            // Starting with no cards would let the next save overwrite the file
+            throw new UncheckedIOException("Could not read " + dataFilePath, e);
+        }
+    }
+
+    /**
+     * Writes a full snapshot in the configured format, streaming one card at a time. The file is written next to the
+     * target and renamed over it, so a crash mid-write never leaves a truncated data file behind.
+     * Writes are serialized on this manager, so no log append can slip in between a snapshot and the log truncation.
+     * The lock is a ReentrantLock, not a monitor, so virtual threads waiting on the disk release their carrier.
+     * @throws UncheckedIOException if the snapshot could not be written; the previous one is left in place.
+     */
     public void saveData(List<CreditCard> data) {
+        writeLock.lock();
         try {
-            objectMapper.writeValue(new File(dataFilePath), data);
+            saveTimer.record(() -> writeData(data));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeData(List<CreditCard> data) {
+        try {
+            if (binary) {
+                BinarySnapshot.write(data, snapshotPath);
+            } else {
+                writeJson(data);
+                Files.deleteIfExists(snapshotPath); // Would otherwise shadow the JSON file if its clock ran ahead
+            }
+            if (writeAheadLog != null) {
+                writeAheadLog.truncate();
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException("Could not save " + (binary ? snapshotPath : dataFilePath), e);
         }
     }
 
-    public List<CreditCard> getCreditCards() {
-        return creditCards;
+    private void writeJson(List<CreditCard> data) throws IOException {
+        Path target = Path.of(dataFilePath).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            try (JsonGenerator generator = cardWriter.createGenerator(out, JsonEncoding.UTF8)) {
+                generator.writeStartArray();
+                for (CreditCard card : data) {
+                    cardWriter.writeValue(generator, card);
+                }
+                generator.writeEndArray();
+            }
+            out.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Persists the given changes. With the write-ahead log enabled only the changes are appended, and a compacted
+     * snapshot of {@code data} is taken once the log grows past its limit; otherwise {@code data} is saved in full.
+     * The snapshot is only materialized when it is actually written.
+     * @throws UncheckedIOException if the changes could not be written.
+     */
+    public void recordChanges(List<ChangeRecord> changes, Supplier<List<CreditCard>> data) {
+        writeLock.lock();
+        try {
+            if (writeAheadLog == null) {
+                saveData(data.get());
+                return;
+            }
+            try {
+                writeAheadLog.append(changes);
+            } catch (IOException e) {
+                log.warn("Could not append to the write-ahead log of {}; saving a full snapshot instead",
+                        dataFilePath, e);
+                saveData(data.get());
+                return;
+            }
+            if (writeAheadLog.size() >= walCompactAfter) {
+                try {
+                    saveData(data.get());
+                } catch (UncheckedIOException e) {
+                    // The changes are already in the log, which is compacted again on the next append
+                    log.warn("Could not compact the write-ahead log of {}", dataFilePath, e);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
     }
 
-    public void setCreditCards(List<CreditCard> creditCards) {
-        this.creditCards = creditCards;
+    /**
+     * @return The combined size of the data file, binary snapshot and write-ahead log, in bytes.
+     */
+    public long sizeOnDisk() {
+        long size = new File(dataFilePath).length() + snapshotPath.toFile().length();
+        if (writeAheadLog != null) {
+            size += new File(dataFilePath + ".wal").length();
+        }
+        return size;
     }
 }
@@ -0,0 +1,225 @@
+package com.example.demo.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only log of {@link ChangeRecord}s, one JSON document per line.
+ * Appends go straight to the OS; fsync is batched so that at most one force happens per sync interval,
+ * and a background task forces whatever is still pending once the interval has passed.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private final Path path;
+    private final ObjectWriter writer;
+    private final ObjectReader reader;
+    private final long syncIntervalNanos;
+
+    private FileChannel channel;
+    private ScheduledExecutorService syncer;
+    private long lastSyncNanos = System.nanoTime();
+    private boolean syncPending;
+    private int recordCount;
+    private long validLength = -1;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public WriteAheadLog(Path path, ObjectMapper objectMapper, long syncIntervalMs) {
+        this.path = path;
+        this.writer = objectMapper.writerFor(ChangeRecord.class).without(SerializationFeature.INDENT_OUTPUT);
+        this.reader = objectMapper.readerFor(ChangeRecord.class);
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMs);
+    }
+
+    /**
+     * Reads every complete record in the log. A torn or unparsable last line (e.g. from a crash mid-append)
+     * ends the replay and is cut off before the next append; nothing else is ever cut off.
+     * @throws IOException if the log cannot be read, or an unparsable record is followed by more records. The log
+     *                     is left as it is, and is not cut off by later appends.
+     */
+    public List<ChangeRecord> readAll() throws IOException {
+        lock.lock();
+        try {
+            List<ChangeRecord> records = new ArrayList<>();
+            if (!Files.exists(path)) {
+                recordCount = 0;
+                validLength = 0;
+                return records;
+            }
+            byte[] bytes = Files.readAllBytes(path);
+            int lineStart = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                try {
+                    records.add(reader.readValue(bytes, lineStart, i - lineStart));
+                } catch (IOException e) {
+                    if (indexOf(bytes, (byte) '\n', i + 1) >= 0) {
+                        throw new IOException("Unreadable record at byte " + lineStart + " of " + path
+                                + ", followed by more records", e);
+                    }
+                    break;
+                }
+                lineStart = i + 1;
+            }
+            recordCount = records.size();
+            validLength = lineStart;
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void append(List<ChangeRecord> records) throws IOException {
+        lock.lock();
+        try {
+            FileChannel out = openChannel();
+            try {
+                for (ChangeRecord record : records) {
+                    byte[] line = writer.writeValueAsBytes(record);
+                    ByteBuffer buffer = ByteBuffer.allocate(line.length + 1).put(line).put((byte) '\n');
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                cutBack(out);
+                throw e;
+            }
+            // Everything up to here is a complete record, and stays when the log is reopened
+            validLength = out.position();
+            recordCount += records.size();
+            syncPending = true;
+            if (System.nanoTime() - lastSyncNanos >= syncIntervalNanos) {
+                sync();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            if (channel != null && syncPending) {
+                channel.force(false);
+                syncPending = false;
+            }
+            lastSyncNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every record. Called once a snapshot containing all logged changes is safely on disk.
+     */
+    public void truncate() throws IOException {
+        lock.lock();
+        try {
+            openChannel().truncate(0);
+            channel.force(true);
+            syncPending = false;
+            recordCount = 0;
+            validLength = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (syncer != null) {
+                syncer.shutdownNow();
+                syncer = null;
+            }
+            if (channel != null) {
+                sync();
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (validLength < 0) {
+                validLength = channel.size();
+            }
+            channel.truncate(validLength);
+            channel.position(validLength);
+            long intervalMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(syncIntervalNanos));
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        return channel;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Drops a partly written batch, so the next append does not follow a torn record.
+     */
+    private void cutBack(FileChannel out) {
+        try {
+            out.truncate(validLength);
+            out.position(validLength);
+        } catch (IOException e) {
+            log.warn("Could not cut a partly written batch off the write-ahead log {}", path, e);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            log.error("Could not sync the write-ahead log {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.service.ChangeFeed;
+import com.example.demo.service.CreditCardService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ChangeEventStreamTest {
+
+    @TempDir
+    static Path dataDir;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("app.data.filepath", () -> dataDir.resolve("creditcards.json").toString());
+        registry.add("app.data.pretty-print", () -> "false");
+        registry.add("app.history.filepath", () -> dataDir.resolve("creditcards-history.bin").toString());
+        registry.add("app.tenants.directory", () -> dataDir.resolve("tenants").toString());
+        registry.add("app.changes.max-pending", () -> "32");
+        registry.add("management.server.port", () -> "-1");
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    CreditCardService service;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private Socket openStream() throws Exception {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096); // Before connecting, so the window stays small
+        socket.connect(new InetSocketAddress("127.0.0.1", port));
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /api/creditcards/changes HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return socket;
+    }
+
+    private double subscribers() {
+        return meterRegistry.get("creditcards.changes.subscribers").gauge().value();
+    }
+
+    private void awaitSubscribers(double expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (subscribers() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, subscribers());
+    }
+
+    @Test
+    void aSubscriberThatNeverReadsIsDroppedWithoutStallingTheOthers() throws Exception {
+        CreditCard card = service.addCreditCard(new CreditCard(null, "Gold", null, new ArrayList<>(),
+                new HashMap<>(), 0.0));
+        String payload = "x".repeat(64 * 1024);
+        ChangeFeed feed = service.getChangeFeed();
+
+        try (Socket stalled = openStream(); Socket reading = openStream()) {
+            awaitSubscribers(2);
+            AtomicReference<String> lastId = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try (BufferedReader lines = new BufferedReader(
+                        new InputStreamReader(reading.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = lines.readLine()) != null) {
+                        if (line.startsWith("id:")) {
+                            lastId.set(line.substring(3).trim());
+                        }
+                    }
+                } catch (IOException e) {
+                    // The socket is closed at the end of the test
+                }
+            });
+            reader.start();
+
+            // Far more than the socket buffers hold, so writes to the stalled stream block
+            for (int i = 0; i < 300; i++) {
+                card.setDescription(i + payload);
+                service.updateCreditCard(card.getId(), card);
+            }
+            String expectedId = feed.tag(feed.lastSequence());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (!expectedId.equals(lastId.get()) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(expectedId, lastId.get());
+            awaitSubscribers(1);
+            assertEquals(1.0, meterRegistry.get("creditcards.changes.dropped").counter().count());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.demo.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class CreditCardControllerTest {
+
+    @TempDir
+    static Path dataDir;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("app.data.filepath", () -> dataDir.resolve("creditcards.json").toString());
+        registry.add("app.history.filepath", () -> dataDir.resolve("creditcards-history.bin").toString());
+        registry.add("app.tenants.directory", () -> dataDir.resolve("tenants").toString());
+        registry.add("management.server.port", () -> "-1");
+    }
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    void pagesThroughTheListAndRejectsAMalformedCursor() throws Exception {
+        String tenant = "/api/tenants/paging/creditcards";
+        for (String name : new String[] {"Gold", "Platinum", "Green"}) {
+            mockMvc.perform(post(tenant).contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\":\"" + name + "\",\"redemptions\":[]}"))
+                    .andExpect(status().isOk());
+        }
+
+        String firstPage = mockMvc.perform(get(tenant + "/page").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].name").value(contains("Gold", "Platinum")))
+                .andReturn().getResponse().getContentAsString();
+        String cursor = JsonPath.read(firstPage, "$.nextCursor");
+        mockMvc.perform(get(tenant + "/page").param("limit", "2").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].name").value(contains("Green")))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        mockMvc.perform(get(tenant + "/page").param("cursor", "not a cursor!"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void outOfRangeDaysAndYearsAreRejectedWithBadRequest() throws Exception {
+        String expiring = "/api/creditcards/redemptions/expiring";
+        mockMvc.perform(get(expiring).param("withinDays", "3660")).andExpect(status().isOk());
+        for (String withinDays : new String[] {"-1", "3661", "2147483647"}) {
+            mockMvc.perform(get(expiring).param("withinDays", withinDays)).andExpect(status().isBadRequest());
+        }
+
+        String analytics = "/api/creditcards/analytics";
+        mockMvc.perform(get(analytics + "/frequencies").param("year", "2026")).andExpect(status().isOk());
+        mockMvc.perform(get(analytics + "/frequencies").param("year", "2147483647"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get(analytics + "/cards").param("year", "-2147483648")).andExpect(status().isBadRequest());
+        mockMvc.perform(get(analytics + "/capture-rate").param("to", "1000000000"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get(analytics + "/monthly").param("to", "+999999999-12")).andExpect(status().isBadRequest());
+    }
+
+    private MvcResult list(String base, String ifNoneMatch) throws Exception {
+        return mockMvc.perform(ifNoneMatch == null ? get(base) : get(base).header("If-None-Match", ifNoneMatch))
+                .andReturn();
+    }
+
+    @Test
+    void theCardListIsRevalidatedByETagAndNeverServedStale() throws Exception {
+        for (String base : new String[] {"/api/creditcards", "/api/tenants/etag-a/creditcards",
+                "/api/tenants/etag-b/creditcards"}) {
+            MvcResult initial = list(base, null);
+            assertEquals(200, initial.getResponse().getStatus());
+            String etag = initial.getResponse().getHeader("ETag");
+            String otherTenantEtag = list("/api/tenants/etag-other/creditcards", null).getResponse().getHeader("ETag");
+
+            MvcResult unchanged = list(base, etag);
+            assertEquals(304, unchanged.getResponse().getStatus());
+            assertEquals(0, unchanged.getResponse().getContentLength());
+
+            String card = mockMvc.perform(post(base).contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\":\"Gold " + base + "\",\"redemptions\":[{\"name\":\"Dining\","
+                                    + "\"amount\":10.0,\"frequency\":\"MONTHLY\"}]}"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            String cardId = JsonPath.read(card, "$.id");
+            String redemptionId = JsonPath.read(card, "$.redemptions[0].id");
+
+            MvcResult added = list(base, etag);
+            assertEquals(200, added.getResponse().getStatus());
+            String addedEtag = added.getResponse().getHeader("ETag");
+            assertNotEquals(etag, addedEtag);
+            List<Boolean> checked = JsonPath.read(added.getResponse().getContentAsString(),
+                    "$[?(@.id == '" + cardId + "')].redemptions[0].checked");
+            assertEquals(List.of(false), checked);
+            // Changes to one portfolio leave the others' ETags alone
+            assertEquals(otherTenantEtag, list("/api/tenants/etag-other/creditcards", null).getResponse()
+                    .getHeader("ETag"));
+
+            // The list body is now cached; a change must replace it rather than be hidden by it
+            mockMvc.perform(put(base + "/" + cardId + "/redemptions/" + redemptionId + "/checked")
+                            .param("checked", "true"))
+                    .andExpect(status().isOk());
+            MvcResult updated = list(base, addedEtag);
+            assertEquals(200, updated.getResponse().getStatus());
+            assertNotEquals(addedEtag, updated.getResponse().getHeader("ETag"));
+            checked = JsonPath.read(updated.getResponse().getContentAsString(),
+                    "$[?(@.id == '" + cardId + "')].redemptions[0].checked");
+            assertEquals(List.of(true), checked);
+            assertEquals(304, list(base, updated.getResponse().getHeader("ETag")).getResponse().getStatus());
+
+            // A single card has its own ETag, which changes with the card
+            String cardEtag = mockMvc.perform(get(base + "/" + cardId)).andReturn().getResponse().getHeader("ETag");
+            mockMvc.perform(get(base + "/" + cardId).header("If-None-Match", cardEtag))
+                    .andExpect(status().isNotModified());
+            mockMvc.perform(delete(base + "/" + cardId + "/redemptions/" + redemptionId))
+                    .andExpect(status().isNoContent());
+            mockMvc.perform(get(base + "/" + cardId).header("If-None-Match", cardEtag))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.redemptions").isEmpty());
+            checked = JsonPath.read(list(base, null).getResponse().getContentAsString(),
+                    "$[?(@.id == '" + cardId + "')].redemptions[0].checked");
+            assertTrue(checked.isEmpty());
+        }
+    }
+}
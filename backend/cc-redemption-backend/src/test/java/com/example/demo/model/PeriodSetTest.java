@@ -0,0 +1,54 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeriodSetTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void readsAndWritesTheLegacyStringIdentifiers() throws Exception {
+        String json = "[\"2026-M10\",\"2026-Q4\",\"2026-H2\",\"2026-Y\",\"2025-M01\"]";
+        PeriodSet periods = objectMapper.readValue(json, PeriodSet.class);
+
+        assertEquals(5, periods.size());
+        assertEquals(4, periods.size(2026));
+        assertEquals(2025, periods.firstYear());
+        assertTrue(periods.contains(PeriodSet.of(Redemption.Frequency.MONTHLY, LocalDate.of(2026, 10, 17))));
+        assertTrue(periods.contains(PeriodSet.of(Redemption.Frequency.QUARTERLY, LocalDate.of(2026, 11, 1))));
+        assertEquals("[\"2025-M01\",\"2026-M10\",\"2026-Q4\",\"2026-H2\",\"2026-Y\"]",
+                objectMapper.writeValueAsString(periods));
+    }
+
+    @Test
+    void togglesAndDropsPastYears() {
+        PeriodSet periods = new PeriodSet();
+        int january = PeriodSet.of(Redemption.Frequency.MONTHLY, LocalDate.of(2026, 1, 31));
+        assertTrue(periods.add(january));
+        assertFalse(periods.add(january));
+        assertTrue(periods.remove(january));
+        assertTrue(periods.isEmpty());
+        assertEquals(-1, periods.firstYear());
+
+        periods.add(january);
+        periods.add(PeriodSet.of(Redemption.Frequency.YEARLY, LocalDate.of(2027, 1, 1)));
+        assertTrue(periods.removeYearsThrough(2026));
+        assertEquals(List.of("2027-Y"), periods.keys());
+    }
+
+    @Test
+    void rejectsMalformedIdentifiers() {
+        assertThrows(InvalidFormatException.class, () -> objectMapper.readValue("[\"2026-M13\"]", PeriodSet.class));
+        assertThrows(IllegalArgumentException.class, () -> PeriodSet.parse("M10"));
+    }
+}
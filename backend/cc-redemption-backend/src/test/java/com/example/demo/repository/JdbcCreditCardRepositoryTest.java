@@ -0,0 +1,58 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import com.example.demo.service.CreditCardService;
+import com.example.demo.util.JsonDataManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdbcCreditCardRepositoryTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void migratesJsonAndPersistsMutationsAcrossRestarts() {
+        JsonDataManager json = new JsonDataManager(dataDir.resolve("creditcards.json").toString());
+        List<Redemption> redemptions = new ArrayList<>(List.of(
+                new Redemption("r1", "Uber", 15.0, Redemption.Frequency.MONTHLY, false, null, new PeriodSet()),
+                new Redemption("r2", "Airline", 200.0, Redemption.Frequency.YEARLY, false, null, new PeriodSet())));
+        json.saveData(List.of(new CreditCard("c1", "Platinum", "Amex", redemptions, new HashMap<>(Map.of(2025, 415.0)), 0.0)));
+
+        String url = "jdbc:h2:file:" + dataDir.resolve("db").toAbsolutePath();
+        JdbcCreditCardRepository repository = new JdbcCreditCardRepository(url, true, json);
+        CreditCardService service = new CreditCardService(repository);
+        assertEquals(1, service.getAllCreditCards().size());
+
+        service.updateRedemptionStatus("c1", "r1", true);
+        service.addRedemption("c1", new Redemption(null, "Saks", 50.0, Redemption.Frequency.BIANNUAL, false, null,
+                new PeriodSet()));
+        service.deleteRedemption("c1", "r2");
+        repository.close();
+
+        JdbcCreditCardRepository reopened = new JdbcCreditCardRepository(url, true, json);
+        List<CreditCard> cards = reopened.loadAll();
+        reopened.close();
+        assertEquals(1, cards.size());
+        CreditCard card = cards.get(0);
+        assertEquals(415.0, card.getYearlyReimbursementSummaries().get(2025));
+        assertEquals(List.of("Uber", "Saks"), card.getRedemptions().stream().map(Redemption::getName).toList());
+        Redemption uber = card.getRedemptions().get(0);
+        assertTrue(uber.isChecked());
+        assertEquals(1, uber.getCompletedPeriodsThisYear().size());
+        assertFalse(card.getRedemptions().get(1).isChecked());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.util.ChangeRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindCreditCardRepositoryTest {
+
+    private final List<List<ChangeRecord>> writes = Collections.synchronizedList(new ArrayList<>());
+
+    private final CreditCardRepository recording = new CreditCardRepository() {
+        @Override
+        public List<CreditCard> loadAll() {
+            return List.of();
+        }
+
+        @Override
+        public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+            writes.add(changes);
+        }
+    };
+
+    @Test
+    void coalescesABurstIntoOneWrite() throws Exception {
+        WriteBehindCreditCardRepository repository = new WriteBehindCreditCardRepository(recording, 200, 10_000,
+                new SimpleMeterRegistry());
+        for (int i = 0; i < 100; i++) {
+            repository.persist(ChangeRecord.deleteCard("card-" + i), List::of);
+        }
+        assertTrue(writes.isEmpty());
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (writes.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, writes.size());
+        assertEquals(100, writes.get(0).size());
+        assertEquals("card-99", writes.get(0).get(99).getCardId());
+        assertEquals(0, repository.stats().queueDepth());
+        assertEquals(1, repository.stats().flushes());
+        repository.close();
+    }
+
+    @Test
+    void flushWritesThroughAndCloseDrainsTheQueue() {
+        WriteBehindCreditCardRepository repository = new WriteBehindCreditCardRepository(recording, 60_000, 60_000,
+                new SimpleMeterRegistry());
+        repository.persist(ChangeRecord.deleteCard("a"), List::of);
+        assertEquals(1, repository.stats().queueDepth());
+        repository.flush();
+        assertEquals(1, writes.size());
+
+        repository.persist(ChangeRecord.deleteCard("b"), List::of);
+        repository.close();
+        assertEquals(2, writes.size());
+        assertEquals("b", writes.get(1).get(0).getCardId());
+    }
+
+    @Test
+    void aFailingBatchStaysAtTheHeadAndIsRetriedUntilItIsWritten() throws Exception {
+        AtomicBoolean broken = new AtomicBoolean(true);
+        AtomicInteger attempts = new AtomicInteger();
+        CreditCardRepository flaky = new CreditCardRepository() {
+            @Override
+            public List<CreditCard> loadAll() {
+                return List.of();
+            }
+
+            @Override
+            public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+                if (broken.get()) {
+                    attempts.incrementAndGet();
+                    throw new UncheckedIOException(new IOException("No space left on device"));
+                }
+                writes.add(changes);
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        WriteBehindCreditCardRepository repository = new WriteBehindCreditCardRepository(flaky, 1, 1, registry);
+        repository.persist(ChangeRecord.deleteCard("first"), List::of);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (attempts.get() < 6 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        repository.persist(ChangeRecord.deleteCard("second"), List::of);
+
+        // Many failures later nothing has been dropped, and write-through callers are told so
+        assertThrows(UncheckedIOException.class, repository::flush);
+        assertTrue(writes.isEmpty());
+        WriteBehindCreditCardRepository.Stats failing = repository.stats();
+        assertEquals(2, failing.queueDepth());
+        assertTrue(failing.consecutiveFailures() > 5);
+        assertTrue(failing.lastError().contains("No space left"));
+        assertTrue(registry.get("creditcards.storage.failing").gauge().value() > 5);
+
+        broken.set(false);
+        repository.flush();
+        assertEquals(List.of(List.of("first"), List.of("second")), writes.stream()
+                .map(batch -> batch.stream().map(ChangeRecord::getCardId).toList()).toList());
+        assertEquals(0, repository.stats().consecutiveFailures());
+        assertEquals(0, repository.stats().queueDepth());
+        assertEquals(0.0, registry.get("creditcards.storage.failing").gauge().value());
+        repository.close();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demo.service;
+
+import com.example.demo.util.ChangeRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedTest {
+
+    @Test
+    void resumesFromKeptEventsAndReportsGaps() {
+        ChangeFeed feed = new ChangeFeed(2);
+        for (int i = 0; i < 3; i++) {
+            feed.publish(List.of(ChangeRecord.deleteRedemption("card", "redemption-" + i)));
+        }
+        assertEquals(3, feed.lastSequence());
+
+        List<ChangeFeed.Event> events = feed.eventsAfter(1).orElseThrow();
+        assertEquals(List.of(2L, 3L), events.stream().map(ChangeFeed.Event::sequence).toList());
+        assertEquals(ChangeFeed.CHANGE, events.get(1).name());
+        assertTrue(events.get(1).data().contains("\"redemptionId\":\"redemption-2\""));
+        assertEquals(List.of(), feed.eventsAfter(3).orElseThrow());
+        assertTrue(feed.eventsAfter(0).isEmpty()); // Event 1 is no longer kept
+
+        assertEquals(OptionalLong.of(2), feed.parseTag(feed.tag(2)));
+        assertTrue(feed.parseTag("earlier-run-2").isEmpty());
+        assertTrue(feed.parseTag(feed.tag(4)).isEmpty());
+    }
+
+    @Test
+    void largeChangeSetsArePublishedAsResync() {
+        ChangeFeed feed = new ChangeFeed(10);
+        feed.publish(Collections.nCopies(ChangeFeed.MAX_EVENT_CHANGES + 1, ChangeRecord.deleteCard("card")));
+        ChangeFeed.Event event = feed.eventsAfter(0).orElseThrow().get(0);
+        assertEquals(ChangeFeed.RESYNC, event.name());
+        assertEquals("", event.data());
+    }
+}
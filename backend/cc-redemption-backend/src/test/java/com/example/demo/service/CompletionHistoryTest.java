@@ -0,0 +1,83 @@
+package com.example.demo.service;
+
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import com.example.demo.util.HistoryLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompletionHistoryTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void rollupsSurviveARestartAndUnchecksComeOffTheMonthTheyWereCaptured() {
+        Path file = dataDir.resolve("history.bin");
+        Redemption dining = new Redemption("dining", "Dining", 10.0, Redemption.Frequency.MONTHLY, true, null,
+                new PeriodSet());
+        LocalDate january = LocalDate.of(2025, 1, 15);
+        LocalDate february = LocalDate.of(2025, 2, 10);
+
+        CompletionHistory history = new CompletionHistory(new HistoryLog(file));
+        history.track("card", dining, LocalDate.of(2025, 1, 1));
+        history.completed("card", dining, PeriodSet.of(dining.getFrequency(), january), january);
+        history.completed("card", dining, PeriodSet.of(dining.getFrequency(), february), february);
+        // Unchecked in March: the January capture is undone
+        history.revoked("card", dining, PeriodSet.of(dining.getFrequency(), january), LocalDate.of(2025, 3, 2));
+        history.close();
+
+        CompletionHistory reloaded = new CompletionHistory(new HistoryLog(file));
+        assertEquals(3, reloaded.size());
+        assertEquals(List.of(new CompletionHistory.MonthlyCapture("2025-01", 0.0),
+                        new CompletionHistory.MonthlyCapture("2025-02", 10.0),
+                        new CompletionHistory.MonthlyCapture("2025-03", 0.0)),
+                reloaded.capturedByMonth(YearMonth.of(2025, 1), YearMonth.of(2025, 3)));
+        assertEquals(List.of(new CompletionHistory.CardCapture("card", "Card", 10.0)),
+                reloaded.capturedByCard(2025, id -> "Card"));
+
+        // Twelve monthly periods of 10 were available in 2025, and one was captured
+        CompletionHistory.Capture year = reloaded.captureByYear(2025, 2025, LocalDate.of(2026, 6, 1)).get(0);
+        assertEquals(120.0, year.available(), 0.0001);
+        assertEquals(10.0 / 120.0, year.captureRate(), 0.0001);
+    }
+
+    @Test
+    void manyCompletionsKeepTheirCaptureDaysUntilTheirYearIsClosed() {
+        CompletionHistory history = new CompletionHistory(null);
+        List<Redemption> redemptions = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Redemption redemption = new Redemption("r" + i, "Dining", 1.0, Redemption.Frequency.MONTHLY, true, null,
+                    new PeriodSet());
+            redemptions.add(redemption);
+            for (int month = 1; month <= 12; month++) {
+                LocalDate day = LocalDate.of(2025, month, 1);
+                history.completed("card", redemption, PeriodSet.of(Redemption.Frequency.MONTHLY, day), day);
+            }
+        }
+        // Every other redemption's January is unchecked in June, and comes off January
+        LocalDate june = LocalDate.of(2025, 6, 20);
+        int januaryPeriod = PeriodSet.of(Redemption.Frequency.MONTHLY, LocalDate.of(2025, 1, 1));
+        for (int i = 0; i < redemptions.size(); i += 2) {
+            history.revoked("card", redemptions.get(i), januaryPeriod, june);
+        }
+        assertEquals(List.of(new CompletionHistory.MonthlyCapture("2025-01", 250.0)),
+                history.capturedByMonth(YearMonth.of(2025, 1), YearMonth.of(2025, 1)));
+
+        // Once 2025 is closed its capture days are gone, and a late uncheck comes off the month it happens in
+        history.closeYearsThrough(2025);
+        history.revoked("card", redemptions.get(1), januaryPeriod, LocalDate.of(2026, 1, 5));
+        assertEquals(List.of(new CompletionHistory.MonthlyCapture("2025-01", 250.0),
+                        new CompletionHistory.MonthlyCapture("2026-01", -1.0)),
+                List.of(history.capturedByMonth(YearMonth.of(2025, 1), YearMonth.of(2025, 1)).get(0),
+                        history.capturedByMonth(YearMonth.of(2026, 1), YearMonth.of(2026, 1)).get(0)));
+    }
+}
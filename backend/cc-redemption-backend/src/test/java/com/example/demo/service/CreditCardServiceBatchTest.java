@@ -0,0 +1,135 @@
+package com.example.demo.service;
+
+import com.example.demo.model.BatchOperation;
+import com.example.demo.model.BatchResult;
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.Redemption;
+import com.example.demo.repository.JsonCreditCardRepository;
+import com.example.demo.util.JsonDataManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreditCardServiceBatchTest {
+
+    @TempDir
+    Path dataDir;
+
+    private CreditCardService service(JsonDataManager dataManager) {
+        return new CreditCardService(new JsonCreditCardRepository(dataManager));
+    }
+
+    private static CreditCard card(String name, String... redemptions) {
+        List<Redemption> list = new ArrayList<>();
+        for (String redemption : redemptions) {
+            list.add(new Redemption(null, redemption, 10.0, Redemption.Frequency.MONTHLY, false, null, null));
+        }
+        return new CreditCard(null, name, null, list, new HashMap<>(), 0.0);
+    }
+
+    private static BatchOperation operation(BatchOperation.Type type, CreditCard card, String redemptionId) {
+        return new BatchOperation(type, card.getId(), redemptionId, null);
+    }
+
+    @Test
+    void aFailingOperationLeavesEveryCardUnchangedAndWritesNothing() throws Exception {
+        String dataFile = dataDir.resolve("creditcards.json").toString();
+        Path wal = Path.of(dataFile + ".wal");
+        JsonDataManager dataManager = new JsonDataManager(dataFile, true, 5, 1_000, false);
+        CreditCardService service = service(dataManager);
+        CreditCard gold = service.addCreditCard(card("Gold", "Dining", "Uber"));
+        CreditCard platinum = service.addCreditCard(card("Platinum", "Hotel"));
+        String dining = gold.getRedemptions().get(0).getId();
+        String hotel = platinum.getRedemptions().get(0).getId();
+
+        String before = service.getAllCreditCards().toString();
+        long version = service.getDatasetVersion();
+        long walSize = Files.size(wal);
+        double total = service.getCurrentYearReimbursementTotal();
+
+        BatchResult rejected = service.applyBatch(List.of(
+                operation(BatchOperation.Type.CHECK, gold, dining),
+                new BatchOperation(BatchOperation.Type.ADD, platinum.getId(), null,
+                        new Redemption(null, "Lounge", 50.0, Redemption.Frequency.YEARLY, false, null, null)),
+                operation(BatchOperation.Type.DELETE, platinum, hotel),
+                operation(BatchOperation.Type.CHECK, platinum, hotel))); // Deleted earlier in the batch
+        assertFalse(rejected.isApplied());
+        assertEquals(List.of(BatchResult.Status.NOT_APPLIED, BatchResult.Status.NOT_APPLIED,
+                        BatchResult.Status.NOT_APPLIED, BatchResult.Status.NOT_FOUND),
+                rejected.getResults().stream().map(BatchResult.Item::getStatus).toList());
+
+        assertEquals(before, service.getAllCreditCards().toString());
+        assertEquals(version, service.getDatasetVersion());
+        assertEquals(walSize, Files.size(wal));
+        assertEquals(total, service.getCurrentYearReimbursementTotal(), 0.0001);
+        assertEquals(3, service.getRedemptionCount());
+
+        // The same batch without the failing item goes through, and is written in one go
+        BatchResult applied = service.applyBatch(List.of(
+                operation(BatchOperation.Type.CHECK, gold, dining),
+                operation(BatchOperation.Type.DELETE, platinum, hotel)));
+        assertTrue(applied.isApplied());
+        assertTrue(Files.size(wal) > walSize);
+        dataManager.close();
+
+        List<CreditCard> replayed = new JsonDataManager(dataFile, true, 5, 1_000, false).loadData();
+        assertEquals(List.of(true, false), replayed.get(0).getRedemptions().stream().map(Redemption::isChecked)
+                .toList());
+        assertTrue(replayed.get(1).getRedemptions().isEmpty());
+    }
+
+    @Test
+    void concurrentBatchesOnOverlappingCardsDoNotDeadlock() throws Exception {
+        JsonDataManager dataManager = new JsonDataManager(dataDir.resolve("creditcards.json").toString(), true, 5,
+                1_000, false);
+        CreditCardService service = service(dataManager);
+        List<CreditCard> cards = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            cards.add(service.addCreditCard(card("Card " + i, "Dining")));
+        }
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 200; i++) {
+                    // Each batch touches three cards, listed in a different order by every thread
+                    List<BatchOperation> operations = new ArrayList<>();
+                    for (int c = 0; c < 3; c++) {
+                        CreditCard card = cards.get((thread + c * (thread % 2 == 0 ? 1 : 3)) % cards.size());
+                        String redemptionId = card.getRedemptions().get(0).getId();
+                        operations.add(operation(i % 2 == 0 ? BatchOperation.Type.CHECK : BatchOperation.Type.UNCHECK,
+                                card, redemptionId));
+                    }
+                    assertTrue(service.applyBatch(operations).isApplied());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS); // Times out on a deadlock
+        }
+        executor.shutdownNow();
+        assertEquals(4, service.getRedemptionCount());
+        dataManager.close();
+    }
+}
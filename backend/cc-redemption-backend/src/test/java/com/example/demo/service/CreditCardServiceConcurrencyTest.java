@@ -0,0 +1,103 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import com.example.demo.repository.JsonCreditCardRepository;
+import com.example.demo.util.JsonDataManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreditCardServiceConcurrencyTest {
+
+    private static final int CARDS = 8;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 200;
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void concurrentMutationsAreNeitherLostNorCorrupted() throws Exception {
+        String dataFile = dataDir.resolve("creditcards.json").toString();
+        JsonDataManager dataManager = new JsonDataManager(dataFile, true, 5, 1_000, false);
+        CreditCardService service = new CreditCardService(new JsonCreditCardRepository(dataManager));
+
+        List<String> cardIds = new ArrayList<>();
+        for (int i = 0; i < CARDS; i++) {
+            cardIds.add(service.addCreditCard(new CreditCard(null, "Card " + i, null, new ArrayList<>(),
+                    new HashMap<>(), 0.0)).getId());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    String cardId = cardIds.get((thread + i) % CARDS);
+                    Redemption redemption = service.addRedemption(cardId, new Redemption(null, "T" + thread + "-" + i,
+                            1.0, Redemption.Frequency.MONTHLY, false, null, new PeriodSet())).orElseThrow();
+                    service.updateRedemptionStatus(cardId, redemption.getId(), true).orElseThrow();
+                    service.getAllCreditCards();
+                }
+                return null;
+            }));
+        }
+        // Runs alongside the workers; every check-off happens in the current month, so nothing may be unchecked.
+        Future<?> resetter = executor.submit(() -> {
+            start.await();
+            while (running.get()) {
+                service.resetRedemptions();
+            }
+            return null;
+        });
+
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        resetter.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        int expected = THREADS * OPERATIONS_PER_THREAD;
+        assertAllChecked(service.getAllCreditCards(), expected);
+        assertEquals(expected, service.getCurrentYearReimbursementTotal(), 0.0001);
+        assertTrue(service.verifyReimbursementTotals().isConsistent());
+
+        dataManager.close();
+        assertAllChecked(new JsonDataManager(dataFile, true, 5, 1_000, false).loadData(), expected);
+    }
+
+    private static void assertAllChecked(List<CreditCard> cards, int expectedRedemptions) {
+        int redemptions = 0;
+        for (CreditCard card : cards) {
+            for (Redemption redemption : card.getRedemptions()) {
+                assertTrue(redemption.isChecked(), redemption.getName());
+                assertEquals(1, redemption.getCompletedPeriodsThisYear().size(), redemption.getName());
+                redemptions++;
+            }
+        }
+        assertEquals(CARDS, cards.size());
+        assertEquals(expectedRedemptions, redemptions);
+    }
+}
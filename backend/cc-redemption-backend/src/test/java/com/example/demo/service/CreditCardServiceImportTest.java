@@ -0,0 +1,114 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.ImportResult;
+import com.example.demo.model.Redemption;
+import com.example.demo.repository.CreditCardRepository;
+import com.example.demo.repository.JsonCreditCardRepository;
+import com.example.demo.util.ChangeRecord;
+import com.example.demo.util.JsonDataManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreditCardServiceImportTest {
+
+    private final List<List<ChangeRecord>> persisted = new ArrayList<>();
+    private final CreditCardService service = new CreditCardService(new CreditCardRepository() {
+        @Override
+        public List<CreditCard> loadAll() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+            persisted.add(changes);
+        }
+    });
+
+    private static CreditCard card(String name, double amount) {
+        return new CreditCard(null, name, null, new ArrayList<>(List.of(
+                new Redemption(null, "Dining", amount, Redemption.Frequency.MONTHLY, false, null, null))),
+                new HashMap<>(), 0.0);
+    }
+
+    @Test
+    void importsEveryCardInOnePersistOrNoneAtAll() {
+        ImportResult rejected = service.importCreditCards(List.of(card("Gold", 10.0), card(" ", 10.0),
+                card("Platinum", -1.0)));
+        assertFalse(rejected.isImported());
+        assertEquals(List.of(2, 3), rejected.getErrors().stream().map(ImportResult.Problem::getItem).toList());
+        assertEquals(0, service.getCardCount());
+        assertTrue(persisted.isEmpty());
+
+        // More than one chunk, so ids are assigned in parallel
+        List<CreditCard> catalog = IntStream.range(0, 2000).mapToObj(i -> card("Card " + i, 10.0)).toList();
+        ImportResult imported = service.importCreditCards(catalog);
+        assertTrue(imported.isImported());
+        assertEquals(2000, imported.getRedemptions());
+        assertEquals(1, persisted.size());
+        assertEquals(2000, persisted.get(0).size());
+        assertEquals(2000, service.getRedemptionCount());
+
+        List<CreditCard> exported = service.streamCreditCards().toList();
+        assertEquals("Card 0", exported.get(0).getName());
+        assertEquals("Card 1999", exported.get(1999).getName());
+        Redemption redemption = exported.get(0).getRedemptions().get(0);
+        assertNotNull(redemption.getId());
+        assertTrue(redemption.getCompletedPeriodsThisYear().isEmpty());
+    }
+
+    @Test
+    void aDeleteRacingTheImportIsPersistedAfterIt(@TempDir Path dataDir) throws Exception {
+        String dataFile = dataDir.resolve("creditcards.json").toString();
+        JsonDataManager dataManager = new JsonDataManager(dataFile, true, 5, 1_000, false);
+        CreditCardRepository stored = new JsonCreditCardRepository(dataManager);
+        AtomicReference<CreditCardService> walService = new AtomicReference<>();
+        AtomicReference<Thread> deleter = new AtomicReference<>();
+        walService.set(new CreditCardService(new CreditCardRepository() {
+            @Override
+            public List<CreditCard> loadAll() {
+                return stored.loadAll();
+            }
+
+            @Override
+            public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+                if (deleter.get() == null) {
+                    // The new card is already visible; give its delete the chance to be persisted first
+                    String cardId = changes.get(0).getCardId();
+                    deleter.set(new Thread(() -> walService.get().deleteCreditCard(cardId)));
+                    deleter.get().start();
+                    try {
+                        deleter.get().join(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                stored.persist(changes, snapshot);
+            }
+        }, false, 0, 0, 100, "", new SimpleMeterRegistry()));
+
+        assertTrue(walService.get().importCreditCards(List.of(card("Gold", 10.0), card("Platinum", 20.0)))
+                .isImported());
+        deleter.get().join(10_000);
+        dataManager.close();
+
+        assertEquals(List.of("Platinum"), walService.get().streamCreditCards().map(CreditCard::getName).toList());
+        // Replaying the write-ahead log must not bring the deleted card back
+        assertEquals(List.of("Platinum"), new JsonDataManager(dataFile, true, 5, 1_000, false).loadData().stream()
+                .map(CreditCard::getName).toList());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CardPage;
+import com.example.demo.model.CreditCard;
+import com.example.demo.repository.CreditCardRepository;
+import com.example.demo.util.ChangeRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreditCardServicePageTest {
+
+    private static final CardFilter ALL = new CardFilter(null, null, null, null);
+
+    private final CreditCardService service = new CreditCardService(new CreditCardRepository() {
+        @Override
+        public List<CreditCard> loadAll() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+        }
+    });
+
+    private CreditCard add(String name) {
+        return service.addCreditCard(new CreditCard(null, name, null, new ArrayList<>(), new HashMap<>(), 0.0));
+    }
+
+    private static List<String> names(CardPage<CreditCard> page) {
+        return page.getItems().stream().map(CreditCard::getName).toList();
+    }
+
+    @Test
+    void pagesKeepTheirOrderWhileCardsAreAddedAndDeleted() {
+        List<CreditCard> cards = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            cards.add(add("Card " + i));
+        }
+
+        CardPage<CreditCard> first = service.getCreditCardPage(null, ALL, 2);
+        assertEquals(List.of("Card 0", "Card 1"), names(first));
+
+        // Deleting a card already returned and one not yet returned, and adding one, between pages
+        service.deleteCreditCard(cards.get(0).getId());
+        service.deleteCreditCard(cards.get(3).getId());
+        add("Card 6");
+
+        CardPage<CreditCard> second = service.getCreditCardPage(first.getNextCursor(), ALL, 2);
+        assertEquals(List.of("Card 2", "Card 4"), names(second));
+        CardPage<CreditCard> third = service.getCreditCardPage(second.getNextCursor(), ALL, 2);
+        assertEquals(List.of("Card 5", "Card 6"), names(third));
+        // A full last page has no next cursor
+        assertNull(third.getNextCursor());
+
+        // Deleting the card a cursor points at doesn't invalidate the cursor
+        service.deleteCreditCard(cards.get(1).getId());
+        assertEquals(List.of("Card 2", "Card 4", "Card 5", "Card 6"),
+                names(service.getCreditCardPage(first.getNextCursor(), ALL, 5)));
+    }
+
+    @Test
+    void anEmptyCursorStartsAtTheFirstCardAndAMalformedOneIsRejected() {
+        add("Gold");
+        CreditCard platinum = add("Platinum");
+
+        CardPage<CreditCard> page = service.getCreditCardPage("", ALL, 5);
+        assertEquals(List.of("Gold", "Platinum"), names(page));
+        assertNull(page.getNextCursor());
+
+        // The only card after the cursor is deleted before the next page is fetched
+        String cursor = service.getCreditCardPage(null, ALL, 1).getNextCursor();
+        service.deleteCreditCard(platinum.getId());
+        CardPage<CreditCard> last = service.getCreditCardPage(cursor, ALL, 1);
+        assertTrue(last.getItems().isEmpty());
+        assertNull(last.getNextCursor());
+
+        assertThrows(IllegalArgumentException.class, () -> service.getCreditCardPage("not a cursor!", ALL, 5));
+    }
+}
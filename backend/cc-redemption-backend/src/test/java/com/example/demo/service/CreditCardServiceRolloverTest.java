@@ -0,0 +1,138 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import com.example.demo.repository.CreditCardRepository;
+import com.example.demo.repository.JsonCreditCardRepository;
+import com.example.demo.util.ChangeRecord;
+import com.example.demo.util.JsonDataManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreditCardServiceRolloverTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void catchUpUnchecksEndedPeriodsAndSummarizesThePreviousYear() {
+        LocalDate today = LocalDate.now();
+        LocalDate lastYear = today.minusYears(1);
+        PeriodSet lastYearMonth = new PeriodSet();
+        lastYearMonth.add(PeriodSet.of(Redemption.Frequency.MONTHLY, lastYear));
+        PeriodSet thisYear = new PeriodSet();
+        thisYear.add(PeriodSet.of(Redemption.Frequency.YEARLY, today));
+        Redemption staleMonthly = new Redemption("stale", "Dining", 10.0, Redemption.Frequency.MONTHLY, true,
+                lastYear, lastYearMonth);
+        Redemption currentYearly = new Redemption("current", "Travel", 300.0, Redemption.Frequency.YEARLY, true,
+                today, thisYear);
+        CreditCard card = new CreditCard("card", "Card", null, new ArrayList<>(List.of(staleMonthly, currentYearly)),
+                new HashMap<>(), 0.0);
+
+        String dataFile = dataDir.resolve("creditcards.json").toString();
+        JsonDataManager dataManager = new JsonDataManager(dataFile);
+        dataManager.saveData(List.of(card));
+        CreditCardService service = new CreditCardService(new JsonCreditCardRepository(dataManager));
+
+        Redemption monthly = service.getCreditCardById("card").orElseThrow().getRedemptions().get(0);
+        Redemption yearly = service.getCreditCardById("card").orElseThrow().getRedemptions().get(1);
+        assertFalse(monthly.isChecked());
+        assertTrue(yearly.isChecked());
+        assertEquals(10.0, service.getCreditCardById("card").orElseThrow()
+                .getYearlyReimbursementSummaries().get(lastYear.getYear()));
+        assertEquals(300.0, service.getCurrentYearReimbursementTotal(), 0.0001);
+        assertEquals(LocalDate.of(today.getYear() + 1, 1, 1), service.getNextRolloverDate());
+        // Each chunk of the catch-up is one change: here the year close, then the unchecks
+        assertEquals(2, service.getDatasetVersion());
+        assertEquals(2, service.getCardVersion("card"));
+
+        // Checking off a monthly redemption brings the next rollover forward to the start of next month
+        service.updateRedemptionStatus("card", "stale", true).orElseThrow();
+        assertEquals(today.withDayOfMonth(1).plusMonths(1), service.getNextRolloverDate());
+        assertEquals(3, service.getDatasetVersion());
+        assertEquals(3, service.getCardVersion("card"));
+        assertTrue(new JsonDataManager(dataFile).loadData().get(0).getRedemptions().get(0).isChecked());
+    }
+
+    @Test
+    void aCheckOffOnNewYearsDayBeforeTheCatchUpKeepsItsYearTracked() {
+        // Two years ago was never closed, and a redemption was checked off on Jan 1 of last year before it was
+        LocalDate newYearsDay = LocalDate.now().minusYears(1).withDayOfYear(1);
+        LocalDate twoYearsAgo = newYearsDay.minusDays(1);
+        PeriodSet periods = new PeriodSet();
+        periods.add(PeriodSet.of(Redemption.Frequency.MONTHLY, twoYearsAgo));
+        periods.add(PeriodSet.of(Redemption.Frequency.MONTHLY, newYearsDay));
+        CreditCard card = new CreditCard("card", "Card", null, new ArrayList<>(List.of(new Redemption("dining",
+                "Dining", 10.0, Redemption.Frequency.MONTHLY, true, newYearsDay, periods))), new HashMap<>(), 0.0);
+        JsonDataManager dataManager = new JsonDataManager(dataDir.resolve("creditcards.json").toString());
+        dataManager.saveData(List.of(card));
+
+        CreditCardService service = new CreditCardService(new JsonCreditCardRepository(dataManager));
+
+        // Both years are closed, not just the first, and the current one is tracked for the next rollover
+        CreditCard loaded = service.getCreditCardById("card").orElseThrow();
+        assertEquals(10.0, loaded.getYearlyReimbursementSummaries().get(twoYearsAgo.getYear()));
+        assertEquals(10.0, loaded.getYearlyReimbursementSummaries().get(newYearsDay.getYear()));
+        assertTrue(loaded.getRedemptions().get(0).getCompletedPeriodsThisYear().isEmpty());
+        assertEquals(LocalDate.of(LocalDate.now().getYear() + 1, 1, 1), service.getNextRolloverDate());
+    }
+
+    @Test
+    void aDeleteRacingTheResetIsPersistedAfterIt() throws Exception {
+        LocalDate lastYear = LocalDate.now().minusYears(1);
+        PeriodSet lastYearMonth = new PeriodSet();
+        lastYearMonth.add(PeriodSet.of(Redemption.Frequency.MONTHLY, lastYear));
+        CreditCard card = new CreditCard("card", "Card", null, new ArrayList<>(List.of(new Redemption("stale",
+                "Dining", 10.0, Redemption.Frequency.MONTHLY, true, lastYear, lastYearMonth))), new HashMap<>(), 0.0);
+        String dataFile = dataDir.resolve("creditcards.json").toString();
+        new JsonDataManager(dataFile).saveData(List.of(card));
+
+        JsonDataManager dataManager = new JsonDataManager(dataFile, true, 5, 1_000, false);
+        CreditCardRepository stored = new JsonCreditCardRepository(dataManager);
+        AtomicReference<CreditCardService> service = new AtomicReference<>();
+        AtomicReference<Thread> deleter = new AtomicReference<>();
+        service.set(new CreditCardService(new CreditCardRepository() {
+            @Override
+            public List<CreditCard> loadAll() {
+                return stored.loadAll();
+            }
+
+            @Override
+            public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+                if (deleter.get() == null) {
+                    // Give a delete of the card the chance to be persisted before the reset that changed it
+                    deleter.set(new Thread(() -> service.get().deleteCreditCard("card")));
+                    deleter.get().start();
+                    try {
+                        deleter.get().join(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                stored.persist(changes, snapshot);
+            }
+        }, false, 0, 0, 100, "", new SimpleMeterRegistry()));
+
+        service.get().resetRedemptions();
+        deleter.get().join(10_000);
+        dataManager.close();
+
+        assertTrue(service.get().getAllCreditCards().isEmpty());
+        // Replaying the write-ahead log must not bring the deleted card back
+        assertTrue(new JsonDataManager(dataFile, true, 5, 1_000, false).loadData().isEmpty());
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.Redemption;
+import com.example.demo.repository.CreditCardRepository;
+import com.example.demo.util.ChangeRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreditCardServiceUpdateTest {
+
+    private final CreditCardService service = new CreditCardService(new CreditCardRepository() {
+        @Override
+        public List<CreditCard> loadAll() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+        }
+    });
+
+    private static Redemption redemption(String id, String name) {
+        return new Redemption(id, name, 10.0, Redemption.Frequency.MONTHLY, false, null, null);
+    }
+
+    private static CreditCard card(String name, Redemption... redemptions) {
+        return new CreditCard(null, name, null, new ArrayList<>(List.of(redemptions)), new HashMap<>(), 0.0);
+    }
+
+    @Test
+    void redemptionIdsOfAnotherCardOrRepeatedAreReplaced() {
+        CreditCard gold = service.addCreditCard(card("Gold", redemption(null, "Dining")));
+        String dining = gold.getRedemptions().get(0).getId();
+        CreditCard platinum = service.addCreditCard(card("Platinum"));
+
+        CreditCard updated = service.updateCreditCard(platinum.getId(), card("Platinum",
+                redemption(dining, "Stolen"), redemption("lounge", "Lounge"), redemption("lounge", "Lounge again")))
+                .orElseThrow();
+        List<String> ids = updated.getRedemptions().stream().map(Redemption::getId).toList();
+        assertNotEquals(dining, ids.get(0));
+        assertEquals("lounge", ids.get(1));
+        assertNotEquals("lounge", ids.get(2));
+        assertEquals(4, service.getRedemptionCount());
+
+        // The original redemption still resolves to its own card
+        assertEquals("Dining", service.updateRedemptionStatus(gold.getId(), dining, true).orElseThrow().getName());
+        assertTrue(service.updateRedemptionStatus(platinum.getId(), dining, true).isEmpty());
+        assertTrue(service.deleteRedemption(gold.getId(), dining));
+        assertEquals(3, service.getRedemptionCount());
+
+        // Keeping its own ids on a later update is not a clash
+        CreditCard again = service.updateCreditCard(platinum.getId(), card("Platinum",
+                updated.getRedemptions().toArray(Redemption[]::new))).orElseThrow();
+        assertEquals(ids, again.getRedemptions().stream().map(Redemption::getId).toList());
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo.service;
+
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OutstandingCreditsTest {
+
+    private static Redemption redemption(String id, double amount, Redemption.Frequency frequency, boolean checked) {
+        return new Redemption(id, id, amount, frequency, checked, null, new PeriodSet());
+    }
+
+    @Test
+    void ordersUncheckedCreditsByExpiryAndMovesEndedPeriodsForward() {
+        LocalDate may20 = LocalDate.of(2026, 5, 20);
+        OutstandingCredits credits = new OutstandingCredits();
+        credits.update("card", redemption("dining", 10.0, Redemption.Frequency.MONTHLY, false), may20);
+        credits.update("card", redemption("uber", 15.0, Redemption.Frequency.MONTHLY, false), may20);
+        credits.update("card", redemption("travel", 300.0, Redemption.Frequency.YEARLY, false), may20);
+        credits.update("card", redemption("hotel", 50.0, Redemption.Frequency.BIANNUAL, true), may20);
+        credits.update("card", redemption("unknown", 5.0, null, false), may20);
+
+        OutstandingCredits.Expiring expiring = credits.expiring(may20, LocalDate.of(2026, 6, 30), 10, id -> "Gold");
+        // Same day: the larger credit first
+        assertEquals(List.of("uber", "dining"),
+                expiring.credits().stream().map(OutstandingCredits.Credit::redemptionId).toList());
+        assertEquals(LocalDate.of(2026, 5, 31), expiring.credits().get(0).expiresOn());
+        assertEquals("Gold", expiring.credits().get(0).cardName());
+        assertEquals(2, expiring.count());
+        assertEquals(25.0, expiring.valueAtRisk(), 0.0001);
+
+        // Checking one off removes it; the other carries into June once May has ended
+        credits.update("card", redemption("uber", 15.0, Redemption.Frequency.MONTHLY, true), may20);
+        LocalDate june2 = LocalDate.of(2026, 6, 2);
+        expiring = credits.expiring(june2, LocalDate.of(2026, 12, 31), 1, id -> "Gold");
+        assertEquals(1, expiring.credits().size());
+        assertEquals(LocalDate.of(2026, 6, 30), expiring.credits().get(0).expiresOn());
+        assertEquals(2, expiring.count());
+        assertEquals(310.0, expiring.valueAtRisk(), 0.0001);
+
+        credits.remove("travel");
+        assertEquals(1, credits.size());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import com.example.demo.repository.CreditCardRepository;
+import com.example.demo.util.ChangeRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TenantPartitionsTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void loadsTenantsLazilyAndEvictsTheLeastRecentlyUsedOverTheLimit() {
+        CreditCardService defaultService = new CreditCardService(new CreditCardRepository() {
+            @Override
+            public List<CreditCard> loadAll() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public void persist(List<ChangeRecord> changes, Supplier<List<CreditCard>> snapshot) {
+            }
+        });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TenantPartitions partitions = new TenantPartitions(defaultService, new ConcurrentTaskScheduler(),
+                dataDir.toString(), 512, 2, 0, 100, false, "json", registry);
+        List<String> evicted = new ArrayList<>();
+        partitions.addListener(new TenantPartitions.Listener() {
+            @Override
+            public void loaded(String tenant, CreditCardService partition) {
+            }
+
+            @Override
+            public void evicted(String tenant, CreditCardService partition) {
+                evicted.add(tenant);
+            }
+        });
+
+        assertSame(defaultService, partitions.get(null));
+        assertThrows(IllegalArgumentException.class, () -> partitions.get("../etc"));
+
+        CreditCardService alice = partitions.get("alice");
+        alice.addCreditCard(new CreditCard(null, "Gold", null, new ArrayList<>(List.of(
+                new Redemption(null, "Dining", 10.0, Redemption.Frequency.MONTHLY, false, null, new PeriodSet()))),
+                new HashMap<>(), 0.0));
+        assertSame(alice, partitions.get("alice"));
+        assertTrue(Files.exists(dataDir.resolve("alice").resolve("creditcards.json")));
+        partitions.get("bob");
+        assertEquals(0, partitions.get("bob").getCardCount()); // Tenants do not see each other's cards
+        // Summed over the tenants, which register no gauges of their own
+        assertEquals(1.0, registry.get("creditcards.tenants.cards").gauge().value());
+        assertEquals(1.0, registry.get("creditcards.tenants.redemptions").gauge().value());
+        assertNull(registry.find("creditcards.cards").gauge());
+
+        partitions.get("carol"); // Three resident with a limit of two: alice was used least recently
+        assertEquals(List.of("alice"), evicted);
+
+        CreditCardService reloaded = partitions.get("alice");
+        assertNotSame(alice, reloaded);
+        assertEquals(1, reloaded.getRedemptionCount());
+        assertEquals(List.of("alice", "bob"), evicted);
+
+        // A partition in use stays resident, however long it has been idle and however far over the limit
+        CreditCardService dave = partitions.acquire("dave");
+        partitions.get("erin");
+        partitions.get("frank");
+        assertEquals(List.of("alice", "bob", "carol", "alice", "erin"), evicted);
+        assertSame(dave, partitions.get("dave"));
+        // Once released it counts as used at that moment, and is evicted in its turn
+        partitions.release("dave");
+        partitions.get("grace");
+        partitions.get("heidi");
+        assertEquals(List.of("alice", "bob", "carol", "alice", "erin", "frank", "dave"), evicted);
+        assertEquals(2.0, registry.get("creditcards.tenants.resident").gauge().value());
+        partitions.close();
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.demo.util;
+
+import com.example.demo.model.CreditCard;
+import com.example.demo.model.PeriodSet;
+import com.example.demo.model.Redemption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonDataManagerTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void binarySnapshotRoundTripsAndACorruptOneStopsTheLoad() throws IOException {
+        String file = dataDir.resolve("creditcards.json").toString();
+        LocalDate checkedOn = LocalDate.of(2026, 3, 14);
+        PeriodSet periods = new PeriodSet();
+        periods.add(PeriodSet.of(Redemption.Frequency.MONTHLY, checkedOn));
+        List<Redemption> redemptions = new ArrayList<>(List.of(
+                new Redemption("r1", "Uber ✓", 15.0, Redemption.Frequency.MONTHLY, true, checkedOn, periods),
+                new Redemption("r2", "Airline", 200.0, null, false, null, new PeriodSet())));
+        List<CreditCard> cards = List.of(
+                new CreditCard("c1", "Platinum", null, redemptions, new HashMap<>(Map.of(2025, 415.0)), 0.0));
+
+        new JsonDataManager(file).saveData(cards);
+        JsonDataManager binary = new JsonDataManager(file, false, 0, 0, false, "binary");
+        binary.saveData(cards);
+        assertTrue(Files.exists(Path.of(file + ".snap")));
+
+        List<CreditCard> loaded = binary.loadData();
+        assertEquals(1, loaded.size());
+        CreditCard card = loaded.get(0);
+        assertNull(card.getDescription());
+        assertEquals(415.0, card.getYearlyReimbursementSummaries().get(2025));
+        Redemption uber = card.getRedemptions().get(0);
+        assertEquals("Uber ✓", uber.getName());
+        assertTrue(uber.isChecked());
+        assertEquals(checkedOn, uber.getLastCheckedDate());
+        assertEquals(periods, uber.getCompletedPeriodsThisYear());
+        assertNull(card.getRedemptions().get(1).getFrequency());
+
+        // Read through windows so small that nearly every value straddles two of them
+        for (int segmentSize : new int[] {1, 3, 7, 64}) {
+            assertEquals(loaded.toString(), BinarySnapshot.read(Path.of(file + ".snap"), segmentSize).toString());
+        }
+
+        // A flipped payload byte fails the checksum, and the older JSON file is not loaded in its place
+        try (RandomAccessFile snapshot = new RandomAccessFile(file + ".snap", "rw")) {
+            snapshot.seek(30);
+            int original = snapshot.read();
+            snapshot.seek(30);
+            snapshot.write(original ^ 0xFF);
+        }
+        assertThrows(UncheckedIOException.class, binary::loadData);
+
+        // Saving as JSON again retires the snapshot
+        new JsonDataManager(file).saveData(cards);
+        assertFalse(Files.exists(Path.of(file + ".snap")));
+    }
+
+    @Test
+    void appendsAfterTheLogsAreClosedAndReopenedKeepTheEarlierRecords() throws IOException {
+        String file = dataDir.resolve("creditcards.json").toString();
+        JsonDataManager walManager = new JsonDataManager(file, true, 5, 1_000, false);
+        walManager.loadData();
+        for (String id : new String[] {"c1", "c2"}) {
+            CreditCard card = new CreditCard(id, id, null, new ArrayList<>(), new HashMap<>(), 0.0);
+            walManager.recordChanges(List.of(ChangeRecord.putCard(card)), List::of);
+            walManager.close();
+        }
+        assertEquals(List.of("c1", "c2"), new JsonDataManager(file, true, 5, 1_000, false).loadData().stream()
+                .map(CreditCard::getId).toList());
+
+        Path historyFile = dataDir.resolve("history.bin");
+        HistoryLog history = new HistoryLog(historyFile);
+        List<String> cardIds = new ArrayList<>();
+        HistoryLog.Visitor visitor = new HistoryLog.Visitor() {
+            @Override
+            public void card(String cardId) {
+                cardIds.add(cardId);
+            }
+
+            @Override
+            public void redemption(int index, String redemptionId, int cardIndex, byte frequency, double amount,
+                                   int fromDay) {
+            }
+
+            @Override
+            public void removed(int redemptionIndex, int day) {
+            }
+
+            @Override
+            public void event(int redemptionIndex, int period, int day, byte frequency, double amount) {
+            }
+        };
+        history.replay(visitor);
+        for (String id : new String[] {"c1", "c2"}) {
+            history.appendCard(id);
+            history.close();
+        }
+        new HistoryLog(historyFile).replay(visitor);
+        assertEquals(List.of("c1", "c2"), cardIds);
+    }
+
+    @Test
+    void anUnreadableRecordBeforeTheLastStopsTheLoadAndKeepsTheLog() throws IOException {
+        String file = dataDir.resolve("creditcards.json").toString();
+        Path wal = Path.of(file + ".wal");
+        JsonDataManager walManager = new JsonDataManager(file, true, 5, 1_000, false);
+        walManager.loadData();
+        for (String id : new String[] {"c1", "c2"}) {
+            CreditCard card = new CreditCard(id, id, null, new ArrayList<>(), new HashMap<>(), 0.0);
+            walManager.recordChanges(List.of(ChangeRecord.putCard(card)), List::of);
+        }
+        walManager.close();
+        List<String> lines = Files.readAllLines(wal);
+        Files.write(wal, List.of(lines.get(0), "{\"type\":", lines.get(1)));
+        byte[] corrupt = Files.readAllBytes(wal);
+
+        JsonDataManager reopened = new JsonDataManager(file, true, 5, 1_000, false);
+        assertThrows(UncheckedIOException.class, reopened::loadData);
+        reopened.close();
+        assertArrayEquals(corrupt, Files.readAllBytes(wal));
+
+        // A torn last line is still cut off as before
+        Files.write(wal, List.of(lines.get(0), lines.get(1), "{\"type\":"));
+        assertEquals(List.of("c1", "c2"), new JsonDataManager(file, true, 5, 1_000, false).loadData().stream()
+                .map(CreditCard::getId).toList());
+    }
+}